@@ -4,12 +4,20 @@ import com.google.gson.Gson;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
-import com.zxzinn.novelai.api.APIClient;
+import com.zxzinn.novelai.api.HttpClientProvider;
 import com.zxzinn.novelai.service.VersionCheckService;
 import com.zxzinn.novelai.service.filemanager.FileManagerService;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
+import com.zxzinn.novelai.utils.embed.EmbedCache;
+import com.zxzinn.novelai.utils.embed.EmbedFileManager;
 import com.zxzinn.novelai.utils.embed.EmbedProcessor;
+import com.zxzinn.novelai.utils.embed.EmbedStatistics;
+import com.zxzinn.novelai.utils.embed.EmbedWatcher;
 import com.zxzinn.novelai.utils.image.ImageUtils;
+import com.zxzinn.novelai.utils.tokenizer.BpeCache;
+import com.zxzinn.novelai.utils.tokenizer.SimpleTokenizer;
+import okhttp3.OkHttpClient;
 
 import java.io.IOException;
 
@@ -17,9 +25,15 @@ public class AppModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        bind(EmbedWatcher.class).toInstance(EmbedWatcher.getInstance());
+        bind(EmbedCache.class).toInstance(EmbedCache.getInstance());
+        bind(EmbedFileManager.class).toInstance(EmbedFileManager.getInstance());
         bind(EmbedProcessor.class).in(Singleton.class);
         bind(ImageUtils.class).in(Singleton.class);
+        bind(BpeCache.class).toInstance(BpeCache.getInstance());
         bind(PropertiesManager.class).toInstance(PropertiesManager.getInstance());
+        bind(ExecutorProvider.class).toInstance(ExecutorProvider.getInstance());
+        bind(HttpClientProvider.class).toInstance(HttpClientProvider.getInstance());
         bind(VersionCheckService.class).in(Singleton.class);
     }
 
@@ -29,10 +43,33 @@ public class AppModule extends AbstractModule {
         return new Gson();
     }
 
+    // 分詞器在第一次被需要時才載入，提示詞元件的 ViewModel 由此注入
     @Provides
     @Singleton
-    FileManagerService provideFileManagerService(PropertiesManager propertiesManager) throws IOException {
-        return new FileManagerService(propertiesManager);
+    SimpleTokenizer provideTokenizer() {
+        return SimpleTokenizer.getInstance();
+    }
+
+    // 所有提示詞元件共用同一份嵌入檔案統計，只向 EmbedWatcher 註冊一次
+    @Provides
+    @Singleton
+    EmbedStatistics provideEmbedStatistics(EmbedCache embedCache, EmbedWatcher embedWatcher, SimpleTokenizer tokenizer) {
+        EmbedStatistics statistics = new EmbedStatistics(embedCache, tokenizer::countTokens);
+        statistics.start(embedWatcher);
+        return statistics;
+    }
+
+    @Provides
+    @Singleton
+    OkHttpClient provideHttpClient(HttpClientProvider httpClientProvider) {
+        return httpClientProvider.getHttpClient();
+    }
+
+    @Provides
+    @Singleton
+    FileManagerService provideFileManagerService(PropertiesManager propertiesManager,
+                                                 ExecutorProvider executorProvider) throws IOException {
+        return new FileManagerService(propertiesManager, executorProvider);
     }
 
 }
\ No newline at end of file
@@ -2,8 +2,13 @@ package com.zxzinn.novelai;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.zxzinn.novelai.api.HttpClientProvider;
 import com.zxzinn.novelai.controller.MainController;
 import com.zxzinn.novelai.service.VersionCheckService;
+import com.zxzinn.novelai.service.filemanager.FileManagerService;
+import com.zxzinn.novelai.service.generation.GenerationTaskManager;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
+import com.zxzinn.novelai.utils.embed.EmbedWatcher;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
 import com.zxzinn.novelai.utils.common.ResourcePaths;
 import com.zxzinn.novelai.utils.ui.LoadingManager;
@@ -41,6 +46,11 @@ public class MainApplication extends Application {
         loadingManager.start();
 
         primaryStage.setOnCloseRequest(event -> {
+            GenerationTaskManager.getInstance().shutdown();
+            injector.getInstance(FileManagerService.class).shutdown();
+            injector.getInstance(HttpClientProvider.class).shutdown();
+            injector.getInstance(EmbedWatcher.class).shutdown();
+            injector.getInstance(ExecutorProvider.class).shutdown();
             injector.getInstance(PropertiesManager.class).shutdown();
             Platform.exit();
             System.exit(0);
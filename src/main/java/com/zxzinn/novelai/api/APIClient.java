@@ -2,58 +2,109 @@ package com.zxzinn.novelai.api;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import com.zxzinn.novelai.model.GenerationTiming;
+import com.zxzinn.novelai.model.GenerationTiming.Phase;
+import com.zxzinn.novelai.utils.common.TimedInputStream;
 import lombok.extern.log4j.Log4j2;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Log4j2
 public class APIClient {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Set<String> REDACTED_LOG_FIELDS = Set.of("image", "reference_image_multiple");
     private final OkHttpClient httpClient;
     private final Endpoint endpoint;
     private static final int MAX_IMAGE_PREVIEW_LENGTH = 100;
 
     public APIClient(Endpoint endpoint) {
+        this(endpoint, HttpClientProvider.getInstance().getHttpClient());
+    }
+
+    public APIClient(Endpoint endpoint, OkHttpClient httpClient) {
         this.endpoint = Objects.requireNonNull(endpoint, "Endpoint cannot be null");
-        this.httpClient = createHttpClient();
+        this.httpClient = Objects.requireNonNull(httpClient, "HTTP client cannot be null");
         log.info("APIClient initialized with endpoint: {}", endpoint.getUrl());
     }
 
-    @NotNull
-    private OkHttpClient createHttpClient() {
-        log.debug("Creating HTTP client...");
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
-                .connectTimeout(60, TimeUnit.SECONDS);
-
-        ClientProxy.detectProxy().ifPresentOrElse(
-                proxy -> {
-                    builder.proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy.getHost(), proxy.getPort())));
-                    log.info("使用代理: {}:{}", proxy.getHost(), proxy.getPort());
-                },
-                () -> log.info("不使用代理")
-        );
-
-        OkHttpClient client = builder.build();
-        log.debug("HTTP client created successfully");
-        return client;
+    public byte[] generateImage(GenerationPayload payload, String apiKey) throws IOException {
+        return generateImage(payload, apiKey, InputStream::readAllBytes);
     }
 
-    public byte[] generateImage(GenerationPayload payload, String apiKey) throws IOException {
+    public <T> T generateImage(GenerationPayload payload, String apiKey, ResponseHandler<T> responseHandler) throws IOException {
         log.info("開始生成圖片...");
         validateInputs(payload, apiKey);
         Request request = createRequest(payload, apiKey);
-        return getResponse(request);
+        return getResponse(request, responseHandler);
+    }
+
+    public CompletableFuture<byte[]> generateImageAsync(GenerationPayload payload, String apiKey) {
+        return generateImageAsync(payload, apiKey, InputStream::readAllBytes);
+    }
+
+    public <T> CompletableFuture<T> generateImageAsync(GenerationPayload payload, String apiKey, ResponseHandler<T> responseHandler) {
+        return generateImageAsync(payload, apiKey, responseHandler, new GenerationTiming());
+    }
+
+    // 取消回傳的 future 會立即中斷底層的 HTTP 呼叫
+    public <T> CompletableFuture<T> generateImageAsync(GenerationPayload payload, String apiKey,
+                                                       ResponseHandler<T> responseHandler, GenerationTiming timing) {
+        log.info("開始生成圖片...");
+        Request request;
+        long serializationStart = System.nanoTime();
+        try {
+            validateInputs(payload, apiKey);
+            request = createRequest(payload, apiKey);
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        timing.add(Phase.SERIALIZATION, System.nanoTime() - serializationStart);
+
+        Call call = httpClient.newCall(request);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long callStart = System.nanoTime();
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                log.info("已取消請求: {}", request.url());
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                if (!call.isCanceled()) {
+                    log.error("獲取響應時發生錯誤", e);
+                }
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                // 回呼在收到回應標頭時觸發，涵蓋上傳、伺服器生成與網路往返
+                timing.add(Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - callStart);
+                try (response) {
+                    future.complete(handleResponse(request, response, responseHandler, timing));
+                } catch (IOException | RuntimeException e) {
+                    if (!call.isCanceled()) {
+                        log.error("獲取響應時發生錯誤", e);
+                    }
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
     }
 
     private void validateInputs(GenerationPayload payload, String apiKey) {
@@ -70,14 +121,13 @@ public class APIClient {
     }
 
     @NotNull
-    private Request createRequest(GenerationPayload payload, String apiKey) {
+    private Request createRequest(GenerationPayload payload, String apiKey) throws IOException {
         log.debug("創建 HTTP 請求...");
-        Gson gson = new GsonBuilder().create();
-        String jsonPayload = gson.toJson(payload);
-        RequestBody body = RequestBody.create(jsonPayload, JSON);
+        RequestBody body = createRequestBody(payload);
 
-        String logJsonPayload = createLogFriendlyJson(payload);
-        log.debug("發送的payload:\n{}", logJsonPayload);
+        if (log.isDebugEnabled()) {
+            log.debug("發送的payload:\n{}", createLogFriendlyJson(payload));
+        }
 
         Request request = new Request.Builder()
                 .url(endpoint.getUrl())
@@ -89,55 +139,87 @@ public class APIClient {
         return request;
     }
 
-    private String createLogFriendlyJson(GenerationPayload payload) {
-        log.debug("創建日誌友好的 JSON...");
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        JsonElement jsonElement = gson.toJsonTree(payload);
-
-        if (jsonElement.isJsonObject()) {
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
-            if (jsonObject.has("parameters") && jsonObject.get("parameters").isJsonObject()) {
-                JsonObject parameters = jsonObject.getAsJsonObject("parameters");
-                if (parameters.has("image")) {
-                    String imageValue = parameters.get("image").getAsString();
-                    if (imageValue.length() > MAX_IMAGE_PREVIEW_LENGTH) {
-                        parameters.addProperty("image", imageValue.substring(0, MAX_IMAGE_PREVIEW_LENGTH) + "...(省略)");
-                        log.debug("圖片數據已被截斷以便於日誌記錄");
-                    }
-                }
-            }
+    @NotNull
+    private RequestBody createRequestBody(GenerationPayload payload) throws IOException {
+        GenerationPayload.GenerationParameters parameters = payload.getParameters();
+        if (parameters != null && parameters.getImageFile() != null) {
+            log.debug("使用串流上傳圖片: {}", parameters.getImageFile());
+            return new Base64ImageRequestBody(GSON, payload, JSON);
         }
+        return RequestBody.create(GSON.toJson(payload), JSON);
+    }
 
-        return gson.toJson(jsonElement);
+    private String createLogFriendlyJson(GenerationPayload payload) {
+        StringWriter stringWriter = new StringWriter();
+        try (JsonWriter jsonWriter = new RedactingJsonWriter(stringWriter)) {
+            jsonWriter.setIndent("  ");
+            GSON.toJson(payload, GenerationPayload.class, jsonWriter);
+        } catch (IOException | JsonIOException e) {
+            log.warn("無法產生日誌用的 JSON: {}", e.getMessage());
+        }
+        return stringWriter.toString();
     }
 
-    @NotNull
-    private byte[] getResponse(Request request) throws IOException {
+    private <T> T getResponse(Request request, ResponseHandler<T> responseHandler) throws IOException {
         log.info("發送請求並獲取響應...");
         try (Response response = httpClient.newCall(request).execute()) {
-            log.debug("收到響應，狀態碼: {}", response.code());
-
-            if (!response.isSuccessful()) {
-                String responseBody = response.body() != null ? response.body().string() : "No response body";
-                log.error("請求失敗，狀態碼: {}, 響應內容: {}", response.code(), responseBody);
-                log.error("請求 URL: {}", request.url());
-                log.error("請求方法: {}", request.method());
-                log.error("請求頭: {}", request.headers());
-                throw new IOException("Unexpected code " + response + "\nResponse body: " + responseBody);
-            }
-
-            ResponseBody responseBody = response.body();
-            if (responseBody == null) {
-                log.error("響應體為空");
-                throw new IOException("Response body is null");
-            }
-
-            byte[] responseBytes = responseBody.bytes();
-            log.info("成功接收響應，數據大小: {} bytes", responseBytes.length);
-            return responseBytes;
+            return handleResponse(request, response, responseHandler, new GenerationTiming());
         } catch (IOException e) {
             log.error("獲取響應時發生錯誤", e);
             throw e;
         }
     }
+
+    private <T> T handleResponse(Request request, Response response, ResponseHandler<T> responseHandler,
+                                 GenerationTiming timing) throws IOException {
+        log.debug("收到響應，狀態碼: {}", response.code());
+
+        if (!response.isSuccessful()) {
+            String responseBody = response.body() != null ? response.body().string() : "No response body";
+            log.error("請求失敗，狀態碼: {}, 響應內容: {}", response.code(), responseBody);
+            log.error("請求 URL: {}", request.url());
+            log.error("請求方法: {}", request.method());
+            log.error("請求頭: {}", request.headers());
+            throw new APIException(response.code(), "Unexpected code " + response + "\nResponse body: " + responseBody,
+                    APIException.parseRetryAfter(response.header("Retry-After")));
+        }
+
+        ResponseBody responseBody = response.body();
+        if (responseBody == null) {
+            log.error("響應體為空");
+            throw new IOException("Response body is null");
+        }
+
+        log.info("成功接收響應，開始讀取數據 (Content-Length: {} bytes)", responseBody.contentLength());
+        return responseHandler.handle(new TimedInputStream(responseBody.byteStream(), nanos -> timing.add(Phase.DOWNLOAD, nanos)));
+    }
+
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(InputStream responseStream) throws IOException;
+    }
+
+    // 序列化時直接截斷圖片欄位，不需先建立整棵 JSON 樹再修改
+    private static class RedactingJsonWriter extends JsonWriter {
+        private String currentName;
+
+        RedactingJsonWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            currentName = name;
+            return super.name(name);
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (value != null && currentName != null && value.length() > MAX_IMAGE_PREVIEW_LENGTH
+                    && REDACTED_LOG_FIELDS.contains(currentName)) {
+                return super.value(value.substring(0, MAX_IMAGE_PREVIEW_LENGTH) + "...(省略)");
+            }
+            return super.value(value);
+        }
+    }
 }
\ No newline at end of file
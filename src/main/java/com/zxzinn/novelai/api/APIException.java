@@ -0,0 +1,57 @@
+package com.zxzinn.novelai.api;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+@Log4j2
+public class APIException extends IOException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Getter
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public APIException(int statusCode, String message, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    // Retry-After 可能是秒數，也可能是 HTTP 日期
+    public static Duration parseRetryAfter(String headerValue) {
+        if (headerValue == null || headerValue.isBlank()) {
+            return null;
+        }
+        String value = headerValue.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+            // 不是秒數，改以日期解析
+        }
+        try {
+            ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration duration = Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt);
+            return duration.isNegative() ? Duration.ZERO : duration;
+        } catch (DateTimeParseException e) {
+            log.warn("無法解析 Retry-After 標頭: {}", headerValue);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.zxzinn.novelai.api;
+
+import com.google.gson.Gson;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+// 將 JSON 外殼與圖片檔案的 base64 編碼直接寫入 socket，圖片不會以字串形式駐留在記憶體中
+@Log4j2
+public class Base64ImageRequestBody extends RequestBody {
+    private static final String IMAGE_PLACEHOLDER = "__streamed_image__";
+    // 提示詞中的引號會被轉義，因此帶引號的鍵值組合只可能出現在 image 欄位
+    private static final String IMAGE_FIELD = "\"image\":\"" + IMAGE_PLACEHOLDER + "\"";
+
+    private final MediaType contentType;
+    private final Path imageFile;
+    private final long imageSize;
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    public Base64ImageRequestBody(Gson gson, GenerationPayload payload, MediaType contentType) throws IOException {
+        GenerationPayload.GenerationParameters parameters = payload.getParameters();
+        this.contentType = contentType;
+        this.imageFile = parameters.getImageFile();
+        this.imageSize = Files.size(imageFile);
+
+        String originalImage = parameters.getImage();
+        String json;
+        parameters.setImage(IMAGE_PLACEHOLDER);
+        try {
+            json = gson.toJson(payload);
+        } finally {
+            parameters.setImage(originalImage);
+        }
+
+        int fieldIndex = json.indexOf(IMAGE_FIELD);
+        if (fieldIndex < 0) {
+            throw new IOException("無法在請求中定位圖片欄位");
+        }
+        int placeholderStart = fieldIndex + IMAGE_FIELD.length() - IMAGE_PLACEHOLDER.length() - 1;
+        this.prefix = json.substring(0, placeholderStart).getBytes(StandardCharsets.UTF_8);
+        this.suffix = json.substring(placeholderStart + IMAGE_PLACEHOLDER.length()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        long encodedImageSize = 4 * ((imageSize + 2) / 3);
+        return prefix.length + encodedImageSize + suffix.length;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        sink.write(prefix);
+        try (OutputStream base64Out = Base64.getEncoder().wrap(CloseShieldOutputStream.wrap(sink.outputStream()))) {
+            Files.copy(imageFile, base64Out);
+        }
+        sink.write(suffix);
+        log.debug("已串流上傳圖片 {} ({} bytes)", imageFile, imageSize);
+    }
+}
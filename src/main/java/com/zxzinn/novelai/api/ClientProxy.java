@@ -19,6 +19,8 @@ public enum ClientProxy {
     private final String host;
     private final int port;
 
+    private static volatile Optional<ClientProxy> detectedProxy;
+
     ClientProxy(String host, int port) {
         this.host = host;
         this.port = port;
@@ -36,7 +38,23 @@ public enum ClientProxy {
         }
     }
 
+    // 探測需要阻塞的 socket 連線，結果只計算一次並快取
     public static Optional<ClientProxy> detectProxy() {
+        Optional<ClientProxy> proxy = detectedProxy;
+        if (proxy == null) {
+            synchronized (ClientProxy.class) {
+                proxy = detectedProxy;
+                if (proxy == null) {
+                    proxy = probeProxies();
+                    detectedProxy = proxy;
+                }
+            }
+        }
+        return proxy;
+    }
+
+    private static Optional<ClientProxy> probeProxies() {
+        log.debug("探測可用的代理...");
         return Arrays.stream(ClientProxy.values())
                 .filter(proxy -> proxy != NONE)
                 .filter(ClientProxy::isAvailable)
@@ -1,9 +1,12 @@
 package com.zxzinn.novelai.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
+import java.nio.file.Path;
+
 @Data
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class GenerationPayload {
@@ -40,6 +43,8 @@ public class GenerationPayload {
         private Double strength;
         private Double noise;
         private String image;
+        @JsonIgnore
+        private transient Path imageFile;
         private Long extra_noise_seed;
 
         private String[] reference_image_multiple;
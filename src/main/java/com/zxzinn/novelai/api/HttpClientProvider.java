@@ -0,0 +1,74 @@
+package com.zxzinn.novelai.api;
+
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Log4j2
+public class HttpClientProvider {
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 16;
+    private static final long TIMEOUT_SECONDS = 60;
+    private static final long PING_INTERVAL_SECONDS = 30;
+
+    @Getter
+    private final OkHttpClient httpClient;
+
+    private static class LazyHolder {
+        static final HttpClientProvider INSTANCE = new HttpClientProvider();
+    }
+
+    public static HttpClientProvider getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private HttpClientProvider() {
+        this.httpClient = createHttpClient();
+    }
+
+    private OkHttpClient createHttpClient() {
+        log.debug("Creating shared HTTP client...");
+        Dispatcher dispatcher = new Dispatcher(ExecutorProvider.getInstance().getIoExecutor());
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                // HTTP/2 讓同一主機的並行請求共用一條已握手的 TLS 連線
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        ClientProxy.detectProxy().ifPresentOrElse(
+                proxy -> {
+                    builder.proxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+                    log.info("使用代理: {}:{}", proxy.getHost(), proxy.getPort());
+                },
+                () -> log.info("不使用代理")
+        );
+
+        OkHttpClient client = builder.build();
+        log.debug("Shared HTTP client created successfully");
+        return client;
+    }
+
+    public void shutdown() {
+        httpClient.dispatcher().cancelAll();
+        httpClient.connectionPool().evictAll();
+    }
+}
@@ -7,8 +7,7 @@ import javafx.stage.FileChooser;
 import lombok.Getter;
 
 import java.io.File;
-import java.util.Base64;
-import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class Image2ImageSettingsPane extends TitledPane {
 
@@ -18,7 +17,7 @@ public class Image2ImageSettingsPane extends TitledPane {
     @Getter private TextField extraNoiseSeedField;
     @Getter private Button uploadImageButton;
     @Getter private Label selectedImageLabel;
-    @Getter private String base64Image;
+    @Getter private Path imageFile;
 
     public Image2ImageSettingsPane() {
         this.propertiesManager = PropertiesManager.getInstance();
@@ -95,12 +94,11 @@ public class Image2ImageSettingsPane extends TitledPane {
         );
         File selectedFile = fileChooser.showOpenDialog(null);
         if (selectedFile != null) {
-            try {
-                byte[] fileContent = Files.readAllBytes(selectedFile.toPath());
-                base64Image = Base64.getEncoder().encodeToString(fileContent);
+            if (selectedFile.canRead()) {
+                imageFile = selectedFile.toPath();
                 selectedImageLabel.setText(selectedFile.getName());
-            } catch (Exception e) {
-                e.printStackTrace();
+            } else {
+                imageFile = null;
                 selectedImageLabel.setText("圖片上傳失敗");
             }
         }
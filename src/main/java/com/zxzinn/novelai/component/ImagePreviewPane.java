@@ -32,6 +32,18 @@ public class ImagePreviewPane extends StackPane {
                 .map(this::createPreview)
                 .orElseGet(() -> new Label("請選擇一個文件"));
 
+        showPreview(previewNode);
+    }
+
+    public void updatePreview(File file, Image image) {
+        if (image == null || image.isError()) {
+            updatePreview(file);
+            return;
+        }
+        showPreview(createImageViewPane(image));
+    }
+
+    private void showPreview(Node previewNode) {
         scrollPane.setContent(previewNode);
 
         if (previewNode instanceof Pane pane) {
@@ -55,7 +67,11 @@ public class ImagePreviewPane extends StackPane {
     }
 
     private Pane createImagePreview(File file) {
-        ImageView imageView = new ImageView(new Image(file.toURI().toString()));
+        return createImageViewPane(new Image(file.toURI().toString()));
+    }
+
+    private Pane createImageViewPane(Image image) {
+        ImageView imageView = new ImageView(image);
         imageView.setPreserveRatio(true);
 
         Pane pane = new Pane(imageView);
@@ -0,0 +1,68 @@
+package com.zxzinn.novelai.component;
+
+import javafx.scene.Node;
+import javafx.scene.control.*;
+import javafx.scene.layout.VBox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+// 選擇提示詞矩陣要列舉的嵌入標籤，勾選變動時即時顯示組合數；未勾選的嵌入照常隨機展開
+public final class MatrixAxisDialog extends Dialog<Set<String>> {
+
+    private final List<CheckBox> axisCheckBoxes = new ArrayList<>();
+    private final Label sizeLabel = new Label();
+    private final ToLongFunction<Set<String>> sizeCalculator;
+
+    public MatrixAxisDialog(List<String> candidates, ToLongFunction<Set<String>> sizeCalculator) {
+        this.sizeCalculator = sizeCalculator;
+        setTitle("提示詞矩陣");
+        setHeaderText("選擇要列舉所有組合的嵌入標籤");
+        getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        VBox content = new VBox(8);
+        for (String name : candidates) {
+            CheckBox checkBox = new CheckBox(name);
+            checkBox.setSelected(true);
+            checkBox.selectedProperty().addListener((observable, oldValue, newValue) -> updateSize());
+            axisCheckBoxes.add(checkBox);
+            content.getChildren().add(checkBox);
+        }
+        content.getChildren().add(sizeLabel);
+        getDialogPane().setContent(content);
+
+        setResultConverter(buttonType -> buttonType == ButtonType.OK ? selectedAxes() : null);
+        updateSize();
+    }
+
+    private Set<String> selectedAxes() {
+        Set<String> axes = new LinkedHashSet<>();
+        for (CheckBox checkBox : axisCheckBoxes) {
+            if (checkBox.isSelected()) {
+                axes.add(checkBox.getText());
+            }
+        }
+        return axes;
+    }
+
+    private void updateSize() {
+        Set<String> axes = selectedAxes();
+        boolean valid = false;
+        if (axes.isEmpty()) {
+            sizeLabel.setText("請至少選擇一個嵌入標籤");
+        } else {
+            try {
+                long size = sizeCalculator.applyAsLong(axes);
+                sizeLabel.setText(String.format("共 %d 組", size));
+                valid = size > 0;
+            } catch (IllegalArgumentException e) {
+                sizeLabel.setText(e.getMessage());
+            }
+        }
+        Node okButton = getDialogPane().lookupButton(ButtonType.OK);
+        okButton.setDisable(!valid);
+    }
+}
@@ -24,9 +24,10 @@ public class PromptComponent extends HBox {
     @Getter private TextArea previewTextArea;
     private ProgressBar tokenProgressBar;
     private Label tokenCountLabel;
+    private Label footprintLabel;
 
-    public PromptComponent() {
-        this.viewModel = new PromptComponentViewModel();
+    public PromptComponent(PromptComponentViewModel viewModel) {
+        this.viewModel = viewModel;
         initializeComponents();
         setupLayout();
         setupBindings();
@@ -55,6 +56,10 @@ public class PromptComponent extends HBox {
 
         tokenCountLabel = new Label();
         tokenCountLabel.getStyleClass().add("token-count-label");
+
+        footprintLabel = new Label();
+        footprintLabel.getStyleClass().add("token-footprint-label");
+        footprintLabel.setWrapText(true);
     }
 
     private void setupLayout() {
@@ -62,7 +67,7 @@ public class PromptComponent extends HBox {
         setAlignment(Pos.TOP_CENTER);
 
         VBox promptBox = new VBox(5);
-        promptBox.getChildren().addAll(promptLabel, promptTextArea);
+        promptBox.getChildren().addAll(promptLabel, promptTextArea, footprintLabel);
         HBox.setHgrow(promptBox, Priority.ALWAYS);
 
         VBox controlsBox = new VBox(5);
@@ -115,6 +120,9 @@ public class PromptComponent extends HBox {
         previewTextArea.textProperty().bindBidirectional(viewModel.previewTextProperty());
         tokenProgressBar.progressProperty().bind(viewModel.tokenProgressProperty());
         tokenCountLabel.textProperty().bind(viewModel.tokenCountTextProperty());
+        footprintLabel.textProperty().bind(viewModel.footprintTextProperty());
+        footprintLabel.visibleProperty().bind(viewModel.footprintTextProperty().isNotEmpty());
+        footprintLabel.managedProperty().bind(footprintLabel.visibleProperty());
 
         viewModel.lockedProperty().addListener((observable, oldValue, newValue) -> {
             lockIcon.setIconLiteral(newValue ? "fas-lock" : "fas-lock-open");
@@ -126,6 +134,13 @@ public class PromptComponent extends HBox {
         });
 
         viewModel.tokenLevelProperty().addListener((observable, oldValue, newValue) -> updateStyles(newValue));
+        viewModel.footprintOverflowProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                footprintLabel.getStyleClass().add("token-footprint-warning");
+            } else {
+                footprintLabel.getStyleClass().remove("token-footprint-warning");
+            }
+        });
     }
 
     private void setupListeners() {
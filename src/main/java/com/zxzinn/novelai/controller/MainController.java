@@ -1,6 +1,7 @@
 package com.zxzinn.novelai.controller;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.zxzinn.novelai.component.NotificationPane;
 import com.zxzinn.novelai.controller.filemanager.FileManagerController;
 import com.zxzinn.novelai.view.GenerationView;
@@ -13,6 +14,7 @@ import com.zxzinn.novelai.service.ui.NotificationService;
 import com.zxzinn.novelai.utils.common.FXMLLoaderFactory;
 import com.zxzinn.novelai.utils.common.ResourcePaths;
 import com.zxzinn.novelai.viewmodel.GenerationViewModel;
+import com.zxzinn.novelai.viewmodel.PromptComponentViewModel;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
@@ -31,14 +33,17 @@ public class MainController {
     private final MetadataService metadataService;
     private final AlertService alertService;
     private final FileOperationService fileOperationService;
+    private final Provider<PromptComponentViewModel> promptViewModelProvider;
 
     @Inject
     public MainController(FileManagerService fileManagerService, MetadataService metadataService,
-                          AlertService alertService, FileOperationService fileOperationService) {
+                          AlertService alertService, FileOperationService fileOperationService,
+                          Provider<PromptComponentViewModel> promptViewModelProvider) {
         this.fileManagerService = fileManagerService;
         this.metadataService = metadataService;
         this.alertService = alertService;
         this.fileOperationService = fileOperationService;
+        this.promptViewModelProvider = promptViewModelProvider;
     }
 
     public BorderPane createView() {
@@ -76,7 +81,7 @@ public class MainController {
 
     private Tab createUnifiedGeneratorTab() {
         GenerationViewModel viewModel = new GenerationViewModel();
-        GenerationView generationView = new GenerationView(viewModel);
+        GenerationView generationView = new GenerationView(viewModel, promptViewModelProvider);
         BorderPane content = generationView.createView();
         return new Tab("圖像生成", content) {{
             setClosable(false);
@@ -1,14 +1,19 @@
 package com.zxzinn.novelai.controller;
 
 import com.zxzinn.novelai.model.TaskInfo;
+import com.zxzinn.novelai.service.generation.GenerationStatistics;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.ProgressBarTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 
+import java.util.Optional;
+
 public class TaskMonitorController {
 
     @FXML private TableView<TaskInfo> taskTable;
@@ -16,6 +21,8 @@ public class TaskMonitorController {
     @FXML private TableColumn<TaskInfo, String> statusColumn;
     @FXML private TableColumn<TaskInfo, Double> progressColumn;
     @FXML private TableColumn<TaskInfo, String> messageColumn;
+    @FXML private TableColumn<TaskInfo, String> timingColumn;
+    @FXML private Label statisticsLabel;
 
     private ObservableList<TaskInfo> tasks = FXCollections.observableArrayList();
 
@@ -25,24 +32,47 @@ public class TaskMonitorController {
         statusColumn.setCellValueFactory(new PropertyValueFactory<>("status"));
         progressColumn.setCellValueFactory(new PropertyValueFactory<>("progress"));
         messageColumn.setCellValueFactory(new PropertyValueFactory<>("message"));
+        timingColumn.setCellValueFactory(new PropertyValueFactory<>("timing"));
 
         progressColumn.setCellFactory(ProgressBarTableCell.forTableColumn());
 
         taskTable.setItems(tasks);
+        updateStatistics(new GenerationStatistics.Snapshot(0, 0, 0, 0, 0, 0));
     }
 
     public void addTask(TaskInfo task) {
-        tasks.add(task);
+        runOnFxThread(() -> tasks.add(task));
     }
 
     public void updateTask(String id, String status, double progress, String message) {
-        for (TaskInfo task : tasks) {
-            if (task.getId().equals(id)) {
-                task.setStatus(status);
-                task.setProgress(progress);
-                task.setMessage(message);
-                break;
-            }
+        runOnFxThread(() -> findTask(id).ifPresent(task -> {
+            task.setStatus(status);
+            task.setProgress(progress);
+            task.setMessage(message);
+        }));
+    }
+
+    public void updateTiming(String id, String timing) {
+        runOnFxThread(() -> findTask(id).ifPresent(task -> task.setTiming(timing)));
+    }
+
+    public void updateStatistics(GenerationStatistics.Snapshot snapshot) {
+        runOnFxThread(() -> statisticsLabel.setText(String.format(
+                "每分鐘 %.1f 張 | 延遲 p50 %.1f 秒 / p95 %.1f 秒 | 重試 %d 次 | 完成 %d / 失敗 %d",
+                snapshot.imagesPerMinute(), snapshot.p50Millis() / 1000.0, snapshot.p95Millis() / 1000.0,
+                snapshot.retries(), snapshot.completedTasks(), snapshot.failedTasks())));
+    }
+
+    private Optional<TaskInfo> findTask(String id) {
+        return tasks.stream().filter(task -> task.getId().equals(id)).findFirst();
+    }
+
+    // 生成任務在背景執行緒回報狀態，表格只能在 FX 執行緒更新
+    private void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
         }
     }
 
@@ -50,4 +80,4 @@ public class TaskMonitorController {
     private void clearCompletedTasks() {
         tasks.removeIf(task -> task.getStatus().equals("完成"));
     }
-}
\ No newline at end of file
+}
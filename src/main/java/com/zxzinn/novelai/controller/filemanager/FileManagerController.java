@@ -85,6 +85,5 @@ public class FileManagerController {
 
     public void shutdown() {
         fileManagerService.shutdown();
-        metadataService.shutdown();
     }
 }
\ No newline at end of file
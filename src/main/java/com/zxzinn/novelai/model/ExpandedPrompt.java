@@ -0,0 +1,5 @@
+package com.zxzinn.novelai.model;
+
+// 展開後的提示詞與產生它的種子；相同模板與種子一定得到相同結果
+public record ExpandedPrompt(String text, long seed) {
+}
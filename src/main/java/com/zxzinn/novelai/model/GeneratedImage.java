@@ -0,0 +1,7 @@
+package com.zxzinn.novelai.model;
+
+import javafx.scene.image.Image;
+
+import java.io.File;
+
+public record GeneratedImage(Image image, File file) {}
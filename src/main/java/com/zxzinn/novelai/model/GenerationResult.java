@@ -2,23 +2,25 @@ package com.zxzinn.novelai.model;
 
 import lombok.Getter;
 
+import java.util.List;
+
 @Getter
 public class GenerationResult {
-    private final byte[] imageData;
+    private final List<GeneratedImage> generatedImages;
     private final boolean isSuccess;
     private final String errorMessage;
 
-    private GenerationResult(byte[] imageData, boolean isSuccess, String errorMessage) {
-        this.imageData = imageData;
+    private GenerationResult(List<GeneratedImage> generatedImages, boolean isSuccess, String errorMessage) {
+        this.generatedImages = generatedImages;
         this.isSuccess = isSuccess;
         this.errorMessage = errorMessage;
     }
 
-    public static GenerationResult success(byte[] imageData) {
-        return new GenerationResult(imageData, true, null);
+    public static GenerationResult success(List<GeneratedImage> generatedImages) {
+        return new GenerationResult(List.copyOf(generatedImages), true, null);
     }
 
     public static GenerationResult failure(String errorMessage) {
-        return new GenerationResult(null, false, errorMessage);
+        return new GenerationResult(List.of(), false, errorMessage);
     }
 }
\ No newline at end of file
@@ -2,5 +2,19 @@ package com.zxzinn.novelai.model;
 
 import com.zxzinn.novelai.api.GenerationPayload;
 
-public record GenerationTask(GenerationPayload payload, String apiKey) {
-}
\ No newline at end of file
+// expansionSeed 為展開提示詞所用的種子，未經嵌入展開時為 null
+public record GenerationTask(GenerationPayload payload, String apiKey, String outputDirectory, Priority priority,
+                             Long expansionSeed) {
+
+    public GenerationTask(GenerationPayload payload, String apiKey, String outputDirectory, Priority priority) {
+        this(payload, apiKey, outputDirectory, priority, null);
+    }
+
+    public GenerationTask(GenerationPayload payload, String apiKey, String outputDirectory) {
+        this(payload, apiKey, outputDirectory, Priority.NORMAL);
+    }
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+}
@@ -0,0 +1,60 @@
+package com.zxzinn.novelai.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+public class GenerationTiming {
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicInteger retries = new AtomicInteger();
+
+    public void add(Phase phase, long nanos) {
+        if (nanos > 0) {
+            phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+    }
+
+    public long getNanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    public long getMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(getNanos(phase));
+    }
+
+    public void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+    public String summary() {
+        String phases = Arrays.stream(Phase.values())
+                .map(phase -> phase.getLabel() + " " + getMillis(phase) + "ms")
+                .collect(Collectors.joining(" | "));
+        return retries.get() > 0 ? phases + " | 重試 " + retries.get() + " 次" : phases;
+    }
+
+    @Getter
+    public enum Phase {
+        QUEUE_WAIT("排隊"),
+        SERIALIZATION("序列化"),
+        TIME_TO_FIRST_BYTE("首位元組"),
+        DOWNLOAD("下載"),
+        UNZIP("解壓"),
+        DECODE("解碼"),
+        DISK_WRITE("寫入");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+}
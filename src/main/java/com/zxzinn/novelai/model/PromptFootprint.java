@@ -0,0 +1,26 @@
+package com.zxzinn.novelai.model;
+
+import java.util.List;
+
+// 不實際展開就能估算的提示詞規模：標籤數與 token 數的最小、最大與期望值
+public record PromptFootprint(Estimate tags, Estimate tokens, List<EmbedFootprint> embeds) {
+
+    public boolean mayExceed(int tokenLimit) {
+        return tokens.max() > tokenLimit;
+    }
+
+    public record Estimate(int min, int max, double expected) {
+        public static final Estimate ZERO = new Estimate(0, 0, 0);
+
+        public static Estimate exactly(int value) {
+            return new Estimate(value, value, value);
+        }
+
+        public Estimate plus(Estimate other) {
+            return new Estimate(min + other.min, max + other.max, expected + other.expected);
+        }
+    }
+
+    public record EmbedFootprint(String name, Estimate tags, Estimate tokens) {
+    }
+}
@@ -10,6 +10,7 @@ public class TaskInfo {
     private final StringProperty status = new SimpleStringProperty();
     private final DoubleProperty progress = new SimpleDoubleProperty();
     private final StringProperty message = new SimpleStringProperty();
+    private final StringProperty timing = new SimpleStringProperty("");
 
     public TaskInfo(String id, String status, double progress, String message) {
         setId(id);
@@ -33,4 +34,8 @@ public class TaskInfo {
     public String getMessage() { return message.get(); }
     public void setMessage(String value) { message.set(value); }
     public StringProperty messageProperty() { return message; }
+
+    public String getTiming() { return timing.get(); }
+    public void setTiming(String value) { timing.set(value); }
+    public StringProperty timingProperty() { return timing; }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.zxzinn.novelai.model;
 
+import java.nio.file.Path;
+
 public class UIComponentsData {
     public String apiKey;
     public String model;
@@ -10,7 +12,7 @@ public class UIComponentsData {
     public boolean smeaDyn;
     public double strength;
     public double noise;
-    public String base64Image;
+    public Path imageFile;
     public long extraNoiseSeed;
     public int outputWidth;
     public int outputHeight;
@@ -19,4 +21,6 @@ public class UIComponentsData {
     public int steps;
     public int count;
     public long seed;
+    public long expansionSeed;
+    public String outputDirectory;
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.zxzinn.novelai.service;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
@@ -34,13 +35,13 @@ public class VersionCheckService {
     private static final int RETRY_DELAY_SECONDS = 5;
 
     private final PropertiesManager propertiesManager;
-    private final ScheduledExecutorService executorService;
+    private final ExecutorService executorService;
     private final String currentJarName;
 
     @Inject
-    public VersionCheckService(PropertiesManager propertiesManager) {
+    public VersionCheckService(PropertiesManager propertiesManager, ExecutorProvider executorProvider) {
         this.propertiesManager = propertiesManager;
-        this.executorService = Executors.newScheduledThreadPool(1);
+        this.executorService = executorProvider.getIoExecutor();
         this.currentJarName = getCurrentJarName();
     }
 
@@ -224,15 +225,4 @@ public class VersionCheckService {
             System.exit(0);
         });
     }
-
-    public void shutdown() {
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-        }
-    }
 }
\ No newline at end of file
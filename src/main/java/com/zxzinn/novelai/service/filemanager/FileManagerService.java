@@ -2,6 +2,7 @@ package com.zxzinn.novelai.service.filemanager;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
 import javafx.application.Platform;
 import javafx.scene.control.TreeItem;
@@ -28,7 +29,6 @@ import java.util.function.BiConsumer;
 public class FileManagerService {
     private static final String WATCHED_DIRECTORIES_KEY = "watchedDirectories";
     private static final int BATCH_SIZE = 100;
-    private static final int THREAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
 
     private final Set<Path> watchedDirectories;
     private final Map<WatchKey, Path> watchKeyToPath;
@@ -36,20 +36,17 @@ public class FileManagerService {
     private final PropertiesManager propertiesManager;
     private final ExecutorService executorService;
     private final ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> watchTask;
     @Setter private BiConsumer<String, WatchEvent.Kind<?>> fileChangeListener;
 
     @Inject
-    public FileManagerService(PropertiesManager propertiesManager) throws IOException {
+    public FileManagerService(PropertiesManager propertiesManager, ExecutorProvider executorProvider) throws IOException {
         this.watchedDirectories = ConcurrentHashMap.newKeySet();
         this.watchKeyToPath = new ConcurrentHashMap<>();
         this.watchService = FileSystems.getDefault().newWatchService();
         this.propertiesManager = propertiesManager;
-        this.executorService = new ThreadPoolExecutor(
-                THREAD_POOL_SIZE, THREAD_POOL_SIZE,
-                0L, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        this.executorService = executorProvider.getIoExecutor();
+        this.scheduledExecutorService = executorProvider.getScheduler();
 
         loadWatchedDirectories();
         startWatchService();
@@ -67,7 +64,7 @@ public class FileManagerService {
     }
 
     private void startWatchService() {
-        scheduledExecutorService.scheduleWithFixedDelay(this::processWatchEvents, 0, 1, TimeUnit.SECONDS);
+        watchTask = scheduledExecutorService.scheduleWithFixedDelay(this::processWatchEvents, 0, 1, TimeUnit.SECONDS);
     }
 
     private void processWatchEvents() {
@@ -283,8 +280,9 @@ public class FileManagerService {
     }
 
     public void shutdown() {
-        executorService.shutdown();
-        scheduledExecutorService.shutdown();
+        if (watchTask != null) {
+            watchTask.cancel(false);
+        }
         try {
             watchService.close();
         } catch (IOException e) {
@@ -3,6 +3,7 @@ package com.zxzinn.novelai.service.filemanager;
 import com.google.inject.Inject;
 import com.zxzinn.novelai.controller.filemanager.FileTreeController;
 import com.zxzinn.novelai.service.ui.AlertService;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.common.TxtProcessor;
 import com.zxzinn.novelai.utils.image.ImageUtils;
 import javafx.application.Platform;
@@ -20,7 +21,6 @@ import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -31,10 +31,11 @@ public class FileOperationService {
     private final AlertService alertService;
 
     @Inject
-    public FileOperationService(FileManagerService fileManagerService, AlertService alertService) {
+    public FileOperationService(FileManagerService fileManagerService, AlertService alertService,
+                                ExecutorProvider executorProvider) {
         this.fileManagerService = fileManagerService;
         this.alertService = alertService;
-        this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.executorService = executorProvider.getCpuExecutor();
     }
 
     public void addWatchedDirectory(TreeView<String> fileTreeView, FileTreeController fileTreeController) {
@@ -188,8 +189,4 @@ public class FileOperationService {
         if (!file.isFile()) return false;
         return file.getName().toLowerCase().endsWith(".txt");
     }
-
-    public void shutdown() {
-        executorService.shutdown();
-    }
 }
\ No newline at end of file
@@ -3,7 +3,9 @@ package com.zxzinn.novelai.service.filemanager;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.common.ResourcePaths;
 import javafx.application.Platform;
 import javafx.scene.control.TextArea;
@@ -20,7 +22,6 @@ import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.jetbrains.annotations.NotNull;
 import org.w3c.dom.Node;
@@ -36,9 +37,10 @@ public class MetadataService {
     private final Path executablePath;
     private final ExecutorService executorService;
 
-    public MetadataService() {
+    @Inject
+    public MetadataService(ExecutorProvider executorProvider) {
         this.executablePath = getExecutablePath();
-        this.executorService = Executors.newCachedThreadPool();
+        this.executorService = executorProvider.getIoExecutor();
     }
 
     @NotNull
@@ -299,8 +301,4 @@ public class MetadataService {
             }
         }
     }
-
-    public void shutdown() {
-        executorService.shutdown();
-    }
 }
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.zxzinn.novelai.service.generation;
 
 import com.google.inject.Inject;
 import com.zxzinn.novelai.utils.embed.EmbedFileManager;
+import com.zxzinn.novelai.utils.embed.EmbedIndex;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.geometry.Bounds;
 import javafx.geometry.Pos;
@@ -11,9 +13,9 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.stage.Popup;
+import javafx.util.Duration;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.text.similarity.LevenshteinDistance;
 
 import java.util.Comparator;
 import java.util.List;
@@ -22,14 +24,19 @@ import java.util.stream.Collectors;
 
 @Log4j2
 public class AutoCompleteHandler {
+    private static final Duration QUERY_DEBOUNCE = Duration.millis(120);
+
     private final TextArea promptTextArea;
     private final ListView<EmbedFileManager.EmbedFile> autoCompleteList;
     private final Popup autoCompletePopup;
     private final Popup previewPopup;
+    private final PauseTransition queryDebounce;
     @Setter private EmbedFileManager embedFileManager;
     private int autoCompleteStartIndex = -1;
-
-    private static final int MAX_LEVENSHTEIN_DISTANCE = 2;
+    // 以下欄位只在 FX 執行緒存取
+    private String pendingQuery;
+    private long queryGeneration;
+    private CompletableFuture<List<EmbedIndex.Match>> inFlightQuery;
 
     @Inject
     public AutoCompleteHandler(TextArea promptTextArea) {
@@ -37,6 +44,8 @@ public class AutoCompleteHandler {
         this.autoCompleteList = setupAutoCompleteList();
         this.autoCompletePopup = setupAutoCompletePopup();
         this.previewPopup = setupPreviewPopup();
+        this.queryDebounce = new PauseTransition(QUERY_DEBOUNCE);
+        this.queryDebounce.setOnFinished(event -> runQuery(pendingQuery));
         setupListeners();
     }
 
@@ -132,7 +141,7 @@ public class AutoCompleteHandler {
     private void updateAutoComplete(int caretPosition, String text) {
         String currentWord = getCurrentWord(text, caretPosition);
         if (!currentWord.isEmpty()) {
-            showAutoComplete(currentWord);
+            scheduleQuery(currentWord);
             autoCompleteStartIndex = caretPosition - currentWord.length();
         } else {
             hideAutoComplete();
@@ -177,7 +186,7 @@ public class AutoCompleteHandler {
             }
         } else if (event.isControlDown() && event.getCode() == KeyCode.SPACE) {
             String currentWord = getCurrentWord(promptTextArea.getText(), promptTextArea.getCaretPosition());
-            showAutoComplete(currentWord);
+            runQuery(currentWord);
             event.consume();
         }
     }
@@ -200,36 +209,62 @@ public class AutoCompleteHandler {
         autoCompleteList.scrollTo(newIndex);
     }
 
-    private void showAutoComplete(String query) {
+    // 連續輸入時只在停頓後查詢一次，中途的查詢直接作廢
+    private void scheduleQuery(String query) {
+        invalidateQueries();
+        pendingQuery = query;
+        queryDebounce.playFromStart();
+    }
+
+    private void runQuery(String query) {
         if (embedFileManager == null) {
             log.warn("EmbedFileManager is null");
             return;
         }
-        CompletableFuture<List<EmbedFileManager.EmbedFile>> futureMatches = embedFileManager.getMatchingEmbedsAsync(query);
-        futureMatches.thenAcceptAsync(matches -> {
-            List<EmbedFileManager.EmbedFile> filteredMatches = filterAndSortMatches(query, matches);
-            if (!filteredMatches.isEmpty()) {
-                Platform.runLater(() -> {
-                    autoCompleteList.getItems().setAll(filteredMatches);
-                    autoCompleteList.getSelectionModel().selectFirst();
-                    positionAutoCompletePopup();
-                    autoCompletePopup.show(promptTextArea, autoCompletePopup.getX(), autoCompletePopup.getY());
-                });
-                log.info("Showing autocomplete popup with {} matches", filteredMatches.size());
-            } else {
+        invalidateQueries();
+        long generation = queryGeneration;
+        // 取消的是搜尋本身，尚未開始執行的搜尋會直接略過
+        CompletableFuture<List<EmbedIndex.Match>> search = embedFileManager.getMatchingEmbedsAsync(query);
+        inFlightQuery = search;
+        search.thenApply(this::filterAndSortMatches).whenCompleteAsync((matches, ex) -> {
+            if (generation != queryGeneration) {
+                return;
+            }
+            inFlightQuery = null;
+            if (ex != null) {
+                log.error("Error fetching autocomplete matches: {}", ex.getMessage());
+            } else if (matches.isEmpty()) {
                 hideAutoComplete();
+            } else {
+                renderMatches(matches);
             }
-        }).exceptionally(ex -> {
-            log.error("Error fetching autocomplete matches: {}", ex.getMessage());
-            return null;
-        });
+        }, Platform::runLater);
     }
 
-    private List<EmbedFileManager.EmbedFile> filterAndSortMatches(String query, List<EmbedFileManager.EmbedFile> matches) {
-        LevenshteinDistance levenshteinDistance = new LevenshteinDistance(MAX_LEVENSHTEIN_DISTANCE);
+    private void renderMatches(List<EmbedFileManager.EmbedFile> matches) {
+        autoCompleteList.getItems().setAll(matches);
+        autoCompleteList.getSelectionModel().selectFirst();
+        positionAutoCompletePopup();
+        autoCompletePopup.show(promptTextArea, autoCompletePopup.getX(), autoCompletePopup.getY());
+        log.debug("Showing autocomplete popup with {} matches", matches.size());
+    }
+
+    // 遞增世代並取消尚未完成的查詢，讓較舊的結果不會覆蓋新的結果
+    private void invalidateQueries() {
+        queryDebounce.stop();
+        queryGeneration++;
+        if (inFlightQuery != null) {
+            inFlightQuery.cancel(false);
+            inFlightQuery = null;
+        }
+    }
+
+    // 編輯距離已在索引中算好，這裡只依距離過濾與排序
+    private List<EmbedFileManager.EmbedFile> filterAndSortMatches(List<EmbedIndex.Match> matches) {
         return matches.stream()
-                .filter(file -> levenshteinDistance.apply(query, file.fileName()) <= MAX_LEVENSHTEIN_DISTANCE)
-                .sorted(Comparator.comparingInt(file -> levenshteinDistance.apply(query, file.fileName())))
+                .filter(EmbedIndex.Match::isClose)
+                .sorted(Comparator.comparingInt(EmbedIndex.Match::distance))
+                .map(EmbedIndex.Match::file)
                 .collect(Collectors.toList());
     }
 
@@ -240,13 +275,22 @@ public class AutoCompleteHandler {
     }
 
     public void hideAutoComplete() {
-        Platform.runLater(() -> {
+        runOnFxThread(() -> {
+            invalidateQueries();
             autoCompletePopup.hide();
             previewPopup.hide();
             promptTextArea.requestFocus();
         });
     }
 
+    private void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+
     private void selectAutoComplete() {
         EmbedFileManager.EmbedFile selected = autoCompleteList.getSelectionModel().getSelectedItem();
         if (selected != null) {
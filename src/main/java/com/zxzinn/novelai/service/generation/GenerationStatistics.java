@@ -0,0 +1,74 @@
+package com.zxzinn.novelai.service.generation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+// 以最近數分鐘內完成的任務計算吞吐量與延遲分位數
+public class GenerationStatistics {
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_SAMPLES = 500;
+    private static final long MIN_SPAN_MILLIS = 1000;
+
+    private final Deque<Sample> samples = new ArrayDeque<>();
+
+    public synchronized void record(long latencyMillis, int imageCount, int retries, boolean success) {
+        long now = System.currentTimeMillis();
+        samples.addLast(new Sample(now, latencyMillis, imageCount, retries, success));
+        evict(now);
+    }
+
+    public synchronized Snapshot snapshot() {
+        long now = System.currentTimeMillis();
+        evict(now);
+        if (samples.isEmpty()) {
+            return new Snapshot(0, 0, 0, 0, 0, 0);
+        }
+
+        int images = 0;
+        int retries = 0;
+        int failed = 0;
+        long windowStart = now;
+        long[] latencies = new long[samples.size()];
+        int succeeded = 0;
+        for (Sample sample : samples) {
+            images += sample.imageCount();
+            retries += sample.retries();
+            windowStart = Math.min(windowStart, sample.completedAt() - sample.latencyMillis());
+            if (sample.success()) {
+                latencies[succeeded++] = sample.latencyMillis();
+            } else {
+                failed++;
+            }
+        }
+
+        long spanMillis = Math.max(MIN_SPAN_MILLIS, now - windowStart);
+        double imagesPerMinute = images * (double) TimeUnit.MINUTES.toMillis(1) / spanMillis;
+        Arrays.sort(latencies, 0, succeeded);
+        return new Snapshot(imagesPerMinute, percentile(latencies, succeeded, 0.50), percentile(latencies, succeeded, 0.95),
+                retries, succeeded, failed);
+    }
+
+    private static long percentile(long[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    private void evict(long now) {
+        while (!samples.isEmpty()
+                && (samples.size() > MAX_SAMPLES || now - samples.peekFirst().completedAt() > WINDOW_MILLIS)) {
+            samples.removeFirst();
+        }
+    }
+
+    private record Sample(long completedAt, long latencyMillis, int imageCount, int retries, boolean success) {
+    }
+
+    public record Snapshot(double imagesPerMinute, long p50Millis, long p95Millis, int retries,
+                           int completedTasks, int failedTasks) {
+    }
+}
@@ -3,37 +3,61 @@ package com.zxzinn.novelai.service.generation;
 import com.zxzinn.novelai.api.APIClient;
 import com.zxzinn.novelai.api.Endpoint;
 import com.zxzinn.novelai.controller.TaskMonitorController;
+import com.zxzinn.novelai.model.GeneratedImage;
 import com.zxzinn.novelai.model.GenerationResult;
 import com.zxzinn.novelai.model.GenerationTask;
+import com.zxzinn.novelai.model.GenerationTiming;
 import com.zxzinn.novelai.model.TaskInfo;
-import com.zxzinn.novelai.utils.strategy.ExponentialBackoffRetry;
+import com.zxzinn.novelai.utils.common.PropertiesManager;
+import com.zxzinn.novelai.utils.image.ImageZipExtractor;
+import com.zxzinn.novelai.utils.strategy.RateLimitAwareRetry;
 import com.zxzinn.novelai.utils.strategy.RetryStrategy;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Log4j2
 public class GenerationTaskManager {
+    private static final String SLOTS_PER_API_KEY_KEY = "generationSlotsPerApiKey";
+    private static final String MAX_QUEUED_TASKS_KEY = "maxQueuedGenerationTasks";
+    private static final int DEFAULT_SLOTS_PER_API_KEY = 2;
+    private static final int DEFAULT_MAX_QUEUED_TASKS = 16;
+
+    // 優先級高者先出列，同優先級依提交順序
+    private static final Comparator<QueuedTask> QUEUE_ORDER = Comparator
+            .comparing((QueuedTask queued) -> queued.task().priority())
+            .thenComparingLong(QueuedTask::sequence);
+
     private static GenerationTaskManager instance;
-    private final ExecutorService executorService;
     private final APIClient apiClient;
     private final RetryStrategy retryStrategy;
+    private final PropertiesManager propertiesManager;
+    private final NavigableSet<QueuedTask> pendingTasks;
+    private final Map<String, Integer> inFlightByApiKey;
+    private final Map<String, CompletableFuture<List<GeneratedImage>>> runningTasks;
+    private final AtomicLong sequence;
+    private final GenerationStatistics statistics;
     @Setter
     private TaskMonitorController taskMonitorController;
 
     private GenerationTaskManager() {
-        this.executorService = Executors.newSingleThreadExecutor();
         this.apiClient = new APIClient(Endpoint.GENERATE_IMAGE);
-        this.retryStrategy = new ExponentialBackoffRetry();
+        this.retryStrategy = new RateLimitAwareRetry();
+        this.propertiesManager = PropertiesManager.getInstance();
+        this.pendingTasks = new TreeSet<>(QUEUE_ORDER);
+        this.inFlightByApiKey = new HashMap<>();
+        this.runningTasks = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.statistics = new GenerationStatistics();
     }
 
     public static synchronized GenerationTaskManager getInstance() {
@@ -44,38 +68,230 @@ public class GenerationTaskManager {
     }
 
     public CompletableFuture<GenerationResult> submitTask(GenerationTask task) {
+        return submitTask(task, null);
+    }
+
+    public CompletableFuture<GenerationResult> submitTask(GenerationTask task, Consumer<GeneratedImage> onImageReady) {
         String taskId = UUID.randomUUID().toString();
-        taskMonitorController.addTask(new TaskInfo(taskId, "進行中", 0, "開始生成圖像"));
-
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                taskMonitorController.updateTask(taskId, "進行中", 0.5, "正在生成圖像");
-                byte[] zipData = retryStrategy.execute(() -> apiClient.generateImage(task.payload(), task.apiKey()))
-                        .orElseThrow(() -> new RuntimeException("Image generation failed after retries"));
-                byte[] imageData = extractImageFromZip(zipData);
-                taskMonitorController.updateTask(taskId, "完成", 1.0, "圖像生成成功");
-                return GenerationResult.success(imageData);
-            } catch (Exception e) {
-                log.error("Error generating image: ", e);
-                taskMonitorController.updateTask(taskId, "失敗", 1.0, "錯誤: " + e.getMessage());
-                return GenerationResult.failure(e.getMessage());
+        CompletableFuture<GenerationResult> future = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (pendingTasks.size() >= getMaxQueuedTasks()) {
+                log.warn("生成佇列已滿，拒絕新任務 (上限: {})", getMaxQueuedTasks());
+                return CompletableFuture.completedFuture(GenerationResult.failure("生成佇列已滿"));
             }
-        }, executorService);
+            taskMonitorController.addTask(new TaskInfo(taskId, "排隊中", 0, "等待可用的生成槽位"));
+            pendingTasks.add(new QueuedTask(taskId, task, onImageReady, sequence.getAndIncrement(), System.nanoTime(), future));
+        }
+
+        dispatchPendingTasks();
+        return future;
+    }
+
+    // 從迭代器逐一取出任務送出，同時未完成的任務不超過 maxOutstanding 個，大量任務不會一次全部產生出來。
+    // 取消回傳的 future 即停止取出新任務；已送出的任務需另外以 cancelAllTasks 中斷
+    public CompletableFuture<Void> submitAll(Iterator<GenerationTask> tasks, int maxOutstanding,
+                                             Consumer<GeneratedImage> onImageReady, Consumer<GenerationResult> onResult) {
+        TaskStream stream = new TaskStream(tasks, Math.max(1, Math.min(maxOutstanding, getMaxQueuedTasks())),
+                onImageReady, onResult);
+        stream.pump();
+        return stream.completion;
     }
 
-    private byte[] extractImageFromZip(byte[] zipData) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zipData))) {
-            ZipEntry entry = zis.getNextEntry();
-            if (entry == null) {
-                throw new IOException("ZIP file is empty");
+    private void dispatchPendingTasks() {
+        List<QueuedTask> readyTasks = new ArrayList<>();
+        synchronized (this) {
+            int slotsPerApiKey = getSlotsPerApiKey();
+            Iterator<QueuedTask> iterator = pendingTasks.iterator();
+            while (iterator.hasNext()) {
+                QueuedTask queued = iterator.next();
+                if (queued.future().isDone()) {
+                    iterator.remove();
+                    continue;
+                }
+                String apiKey = queued.task().apiKey();
+                int inFlight = inFlightByApiKey.getOrDefault(apiKey, 0);
+                if (inFlight < slotsPerApiKey) {
+                    inFlightByApiKey.put(apiKey, inFlight + 1);
+                    iterator.remove();
+                    readyTasks.add(queued);
+                }
             }
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            zis.transferTo(outputStream);
-            return outputStream.toByteArray();
         }
+        readyTasks.forEach(this::runTask);
+    }
+
+    private void runTask(QueuedTask queued) {
+        String taskId = queued.taskId();
+        GenerationTask task = queued.task();
+        GenerationTiming timing = new GenerationTiming();
+        long runStart = System.nanoTime();
+        timing.add(GenerationTiming.Phase.QUEUE_WAIT, runStart - queued.enqueuedAt());
+        taskMonitorController.updateTask(taskId, "進行中", 0.5, "正在生成圖像");
+        if (task.expansionSeed() != null) {
+            log.info("任務 {} 圖像種子 {}，提示詞展開種子 {}", taskId, task.payload().getParameters().getSeed(),
+                    task.expansionSeed());
+        }
+
+        // 重試等待由計時器排程，槽位保留但不佔用執行緒；壓縮檔中途中斷時，重試只交付尚未交付的圖像
+        ImageZipExtractor.Delivery delivery = new ImageZipExtractor.Delivery();
+        CompletableFuture<List<GeneratedImage>> execution = retryStrategy.executeAsync(
+                () -> apiClient.generateImageAsync(task.payload(), task.apiKey(),
+                        responseStream -> ImageZipExtractor.extractImages(responseStream, task.outputDirectory(),
+                                queued.onImageReady(), timing, delivery), timing),
+                (retryCount, delayMillis, cause) -> {
+                    timing.recordRetry();
+                    taskMonitorController.updateTask(taskId, "重試中", 0.5,
+                            String.format("第 %d 次重試，%d 秒後重新送出: %s", retryCount,
+                                    Math.max(1, delayMillis / 1000), cause.getMessage()));
+                });
+        runningTasks.put(taskId, execution);
+
+        execution.handle((generatedImages, ex) -> {
+                    if (ex == null) {
+                        taskMonitorController.updateTask(taskId, "完成", 1.0, String.format("已生成 %d 張圖像", generatedImages.size()));
+                        return GenerationResult.success(generatedImages);
+                    }
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof CancellationException) {
+                        taskMonitorController.updateTask(taskId, "已取消", 1.0, "任務已取消");
+                        return GenerationResult.failure("任務已取消");
+                    }
+                    log.error("Error generating image: ", cause);
+                    taskMonitorController.updateTask(taskId, "失敗", 1.0, "錯誤: " + cause.getMessage());
+                    return GenerationResult.failure(cause.getMessage());
+                })
+                .thenAccept(result -> {
+                    runningTasks.remove(taskId);
+                    releaseSlot(task.apiKey());
+                    recordTiming(taskId, timing, runStart, result);
+                    queued.future().complete(result);
+                    dispatchPendingTasks();
+                });
+    }
+
+    private void recordTiming(String taskId, GenerationTiming timing, long runStart, GenerationResult result) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart);
+        statistics.record(latencyMillis, result.getGeneratedImages().size(), timing.getRetries(), result.isSuccess());
+        log.info("任務 {} 耗時 {}ms: {}", taskId, latencyMillis, timing.summary());
+        taskMonitorController.updateTiming(taskId, timing.summary());
+        taskMonitorController.updateStatistics(statistics.snapshot());
+    }
+
+    private synchronized void releaseSlot(String apiKey) {
+        inFlightByApiKey.computeIfPresent(apiKey, (key, inFlight) -> inFlight > 1 ? inFlight - 1 : null);
+    }
+
+    public void cancelPendingTasks() {
+        List<QueuedTask> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(pendingTasks);
+            pendingTasks.clear();
+        }
+        for (QueuedTask queued : cancelled) {
+            taskMonitorController.updateTask(queued.taskId(), "已取消", 1.0, "任務已取消");
+            queued.future().complete(GenerationResult.failure("任務已取消"));
+        }
+        if (!cancelled.isEmpty()) {
+            log.info("已取消 {} 個排隊中的生成任務", cancelled.size());
+        }
+    }
+
+    public void cancelAllTasks() {
+        cancelPendingTasks();
+        List<CompletableFuture<List<GeneratedImage>>> running = new ArrayList<>(runningTasks.values());
+        running.forEach(execution -> execution.cancel(true));
+        if (!running.isEmpty()) {
+            log.info("已中斷 {} 個進行中的生成任務", running.size());
+        }
+    }
+
+    public int getSlotsPerApiKey() {
+        return Math.max(1, propertiesManager.getInt(SLOTS_PER_API_KEY_KEY, DEFAULT_SLOTS_PER_API_KEY));
+    }
+
+    public void setSlotsPerApiKey(int slots) {
+        propertiesManager.setInt(SLOTS_PER_API_KEY_KEY, Math.max(1, slots));
+        dispatchPendingTasks();
+    }
+
+    public int getMaxQueuedTasks() {
+        return Math.max(1, propertiesManager.getInt(MAX_QUEUED_TASKS_KEY, DEFAULT_MAX_QUEUED_TASKS));
     }
 
     public void shutdown() {
-        executorService.shutdown();
+        cancelAllTasks();
+    }
+
+    private final class TaskStream {
+        private final Iterator<GenerationTask> tasks;
+        private final int maxOutstanding;
+        private final Consumer<GeneratedImage> onImageReady;
+        private final Consumer<GenerationResult> onResult;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        // 確保同時只有一個執行緒在取任務；任務同步完成時不會遞迴呼叫，而是交由正在執行的迴圈再跑一輪
+        private final AtomicInteger pumpRequests = new AtomicInteger();
+        private int outstanding;
+        private boolean exhausted;
+
+        private TaskStream(Iterator<GenerationTask> tasks, int maxOutstanding,
+                           Consumer<GeneratedImage> onImageReady, Consumer<GenerationResult> onResult) {
+            this.tasks = tasks;
+            this.maxOutstanding = maxOutstanding;
+            this.onImageReady = onImageReady;
+            this.onResult = onResult;
+        }
+
+        private void pump() {
+            if (pumpRequests.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                submitAvailable();
+            } while (pumpRequests.decrementAndGet() != 0);
+        }
+
+        private void submitAvailable() {
+            while (!completion.isDone()) {
+                GenerationTask task;
+                synchronized (this) {
+                    if (outstanding >= maxOutstanding) {
+                        return;
+                    }
+                    if (exhausted || !tasks.hasNext()) {
+                        exhausted = true;
+                        if (outstanding == 0) {
+                            completion.complete(null);
+                        }
+                        return;
+                    }
+                    try {
+                        task = tasks.next();
+                    } catch (RuntimeException e) {
+                        log.error("產生批次任務時發生錯誤", e);
+                        completion.completeExceptionally(e);
+                        return;
+                    }
+                    outstanding++;
+                }
+                submitTask(task, onImageReady).thenAccept(result -> {
+                    synchronized (this) {
+                        outstanding--;
+                    }
+                    try {
+                        // 串流已取消時不再回報，避免呼叫端在停止後才收到「已取消」的失敗結果
+                        if (!completion.isCancelled()) {
+                            onResult.accept(result);
+                        }
+                    } finally {
+                        pump();
+                    }
+                });
+            }
+        }
+    }
+
+    private record QueuedTask(String taskId, GenerationTask task, Consumer<GeneratedImage> onImageReady,
+                              long sequence, long enqueuedAt, CompletableFuture<GenerationResult> future) {
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,13 @@
 package com.zxzinn.novelai.utils.common;
 
+import java.nio.file.Paths;
+
 public final class CommonPaths {
     public static final String EMBEDS_DIRECTORY = "embeds";
     public static final String PROPERTIES_FILE = "novelai_settings.properties";
+    // 可重新產生的快取檔放在使用者目錄下，不隨工作目錄變動
+    public static final String APP_DATA_DIRECTORY = Paths.get(System.getProperty("user.home"), ".novelai-studio").toString();
+    public static final String TOKENIZER_SNAPSHOT_FILE = "bpe_vocab.snapshot";
 
     private CommonPaths() {}
 }
\ No newline at end of file
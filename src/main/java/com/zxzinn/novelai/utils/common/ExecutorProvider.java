@@ -0,0 +1,79 @@
+package com.zxzinn.novelai.utils.common;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Log4j2
+public class ExecutorProvider {
+    private static final String VIRTUAL_THREADS_KEY = "useVirtualThreads";
+    private static final int SCHEDULER_POOL_SIZE = 2;
+    // 關閉在 JavaFX 執行緒上進行，所有執行緒池共用這段等待時間
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2_000;
+
+    // I/O 工作：檔案、網路、中繼資料讀取
+    @Getter
+    private final ExecutorService ioExecutor;
+    // CPU 工作：圖像解碼、重新編碼、模糊比對，數量以處理器核心數為上限
+    @Getter
+    private final ExecutorService cpuExecutor;
+    @Getter
+    private final ScheduledExecutorService scheduler;
+    @Getter
+    private final boolean virtualThreads;
+
+    private static class LazyHolder {
+        static final ExecutorProvider INSTANCE = new ExecutorProvider(PropertiesManager.getInstance());
+    }
+
+    public static ExecutorProvider getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private ExecutorProvider(PropertiesManager propertiesManager) {
+        this.virtualThreads = propertiesManager.getBoolean(VIRTUAL_THREADS_KEY, true);
+        this.ioExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("io-", 0).factory())
+                : Executors.newCachedThreadPool(daemonThreadFactory("io-"));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.cpuExecutor = new ThreadPoolExecutor(
+                processors, processors,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                daemonThreadFactory("cpu-"));
+        this.scheduler = Executors.newScheduledThreadPool(SCHEDULER_POOL_SIZE, daemonThreadFactory("scheduler-"));
+
+        log.info("執行緒池已初始化 (I/O: {}, CPU: {} 條執行緒)", virtualThreads ? "虛擬執行緒" : "快取執行緒池", processors);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public void shutdown() {
+        List<ExecutorService> executors = List.of(scheduler, cpuExecutor, ioExecutor);
+        executors.forEach(ExecutorService::shutdown);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MILLIS);
+        try {
+            for (ExecutorService executor : executors) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !executor.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            executors.forEach(ExecutorService::shutdownNow);
+            Thread.currentThread().interrupt();
+        }
+        log.info("執行緒池已關閉");
+    }
+}
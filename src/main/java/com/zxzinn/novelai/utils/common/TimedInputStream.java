@@ -0,0 +1,60 @@
+package com.zxzinn.novelai.utils.common;
+
+import lombok.Getter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+// 累計呼叫端阻塞在底層串流上的時間
+public class TimedInputStream extends FilterInputStream {
+    private final LongConsumer elapsedNanosListener;
+    @Getter
+    private long elapsedNanos;
+
+    public TimedInputStream(InputStream in) {
+        this(in, nanos -> {});
+    }
+
+    public TimedInputStream(InputStream in, LongConsumer elapsedNanosListener) {
+        super(in);
+        this.elapsedNanosListener = elapsedNanosListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.read();
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return in.read(b, off, len);
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return super.skip(n);
+        } finally {
+            record(start);
+        }
+    }
+
+    private void record(long start) {
+        long elapsed = System.nanoTime() - start;
+        elapsedNanos += elapsed;
+        elapsedNanosListener.accept(elapsed);
+    }
+}
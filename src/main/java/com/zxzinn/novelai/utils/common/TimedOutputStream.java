@@ -0,0 +1,64 @@
+package com.zxzinn.novelai.utils.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+// 累計寫入、排清與關閉底層串流所花的時間
+public class TimedOutputStream extends FilterOutputStream {
+    private final LongConsumer elapsedNanosListener;
+
+    public TimedOutputStream(OutputStream out, LongConsumer elapsedNanosListener) {
+        super(out);
+        this.elapsedNanosListener = elapsedNanosListener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.write(b);
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.write(b, off, len);
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        try {
+            out.flush();
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                record(start);
+            }
+        }
+    }
+
+    private void record(long start) {
+        elapsedNanosListener.accept(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,211 @@
+package com.zxzinn.novelai.utils.embed;
+
+import com.zxzinn.novelai.utils.common.CommonPaths;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 嵌入檔案的行快取：已去除空白與空行並預先解析成模板，檔案變動時由 EmbedWatcher 失效，超過容量時淘汰最久未用的檔案
+@Log4j2
+public class EmbedCache {
+    private static final long MAX_CACHED_CHARS = 16L * 1024 * 1024;
+    private static final int MAX_CACHED_FILES = 2048;
+    private static final String WEIGHT_SEPARATOR = "::";
+    // Windows 與 macOS 預設不分大小寫，<Foo> 與 <foo> 讀到同一個檔案，查詢與失效都以統一後的鍵比對
+    private static final boolean CASE_INSENSITIVE_FILES = isCaseInsensitivePlatform();
+    private static final CachedEmbed MISSING = new CachedEmbed(new EmbedContent(List.of(), List.of(), TagSampler.uniform(0)), 0, false);
+
+    private final Path embedsPath;
+    private final EmbedWatcher embedWatcher;
+    private final EmbedDetector embedDetector;
+    private final LinkedHashMap<String, CachedEmbed> entries;
+    private long cachedChars;
+    // 每次失效都會遞增，讀檔期間若有變動就不寫入快取，避免存入過期內容
+    private long invalidationCount;
+
+    private static class LazyHolder {
+        static final EmbedCache INSTANCE = new EmbedCache(Paths.get(CommonPaths.EMBEDS_DIRECTORY), EmbedWatcher.getInstance());
+    }
+
+    public static EmbedCache getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private EmbedCache(Path embedsPath, EmbedWatcher embedWatcher) {
+        this.embedsPath = embedsPath;
+        this.embedWatcher = embedWatcher;
+        this.embedDetector = new EmbedDetector();
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        embedWatcher.addListener(this::onEmbedChanged);
+    }
+
+    public List<String> getLines(String tagName) throws IOException {
+        return getContent(tagName).lines();
+    }
+
+    public EmbedContent getContent(String tagName) throws IOException {
+        String fileName = tagName + ".txt";
+        String key = cacheKey(fileName);
+        long invalidationsBefore;
+        synchronized (this) {
+            CachedEmbed cached = entries.get(key);
+            if (cached != null) {
+                return requireExists(cached, fileName);
+            }
+            invalidationsBefore = invalidationCount;
+        }
+
+        CachedEmbed loaded = load(fileName);
+        // 監看尚未啟動時無法得知檔案變動，此時不快取
+        if (embedWatcher.isActive() || embedWatcher.start()) {
+            synchronized (this) {
+                if (invalidationsBefore == invalidationCount) {
+                    put(key, loaded);
+                }
+            }
+        }
+        return requireExists(loaded, fileName);
+    }
+
+    private static String cacheKey(String relativePath) {
+        String key = relativePath.replace('\\', '/');
+        return CASE_INSENSITIVE_FILES ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+    private static boolean isCaseInsensitivePlatform() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        return os.startsWith("windows") || os.startsWith("mac");
+    }
+
+    private EmbedContent requireExists(CachedEmbed cached, String fileName) throws FileNotFoundException {
+        if (!cached.exists()) {
+            throw new FileNotFoundException("Text file not found: " + embedsPath.resolve(fileName));
+        }
+        return cached.content();
+    }
+
+    private CachedEmbed load(String fileName) throws IOException {
+        Path file = embedsPath.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return MISSING;
+        }
+        List<String> rawLines;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            rawLines = reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .toList();
+        }
+
+        List<String> lines = new ArrayList<>(rawLines.size());
+        List<PromptTemplate> lineTemplates = new ArrayList<>(rawLines.size());
+        double[] weights = new double[rawLines.size()];
+        boolean weighted = false;
+        long chars = 0;
+        for (int i = 0; i < rawLines.size(); i++) {
+            String line = rawLines.get(i);
+            int separator = findWeightSeparator(line);
+            weights[i] = 1.0;
+            if (separator > 0) {
+                weights[i] = Double.parseDouble(line.substring(separator + WEIGHT_SEPARATOR.length()));
+                line = line.substring(0, separator).trim();
+                weighted |= weights[i] != 1.0;
+            }
+            lines.add(line);
+            lineTemplates.add(PromptTemplate.compile(line, embedDetector));
+            chars += line.length();
+        }
+
+        TagSampler sampler = weighted ? TagSampler.weighted(weights) : TagSampler.uniform(lines.size());
+        log.debug("已載入嵌入檔案 {} ({} 行{})", fileName, lines.size(), weighted ? "，含權重" : "");
+        return new CachedEmbed(new EmbedContent(List.copyOf(lines), List.copyOf(lineTemplates), sampler), chars, true);
+    }
+
+    // 行尾的 "::數字" 為抽樣權重，例如 "tag::3"；NovelAI 的 "1.5::tag::" 強調語法結尾沒有數字，不受影響
+    private static int findWeightSeparator(String line) {
+        int separator = line.lastIndexOf(WEIGHT_SEPARATOR);
+        if (separator <= 0 || line.substring(0, separator).isBlank()) {
+            return -1;
+        }
+        int start = separator + WEIGHT_SEPARATOR.length();
+        if (start == line.length()) {
+            return -1;
+        }
+        boolean seenDot = false;
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return line.length() - start == 1 && seenDot ? -1 : separator;
+    }
+
+    private void put(String key, CachedEmbed embed) {
+        CachedEmbed previous = entries.put(key, embed);
+        if (previous != null) {
+            cachedChars -= previous.chars();
+        }
+        cachedChars += embed.chars();
+
+        Iterator<Map.Entry<String, CachedEmbed>> iterator = entries.entrySet().iterator();
+        while ((cachedChars > MAX_CACHED_CHARS || entries.size() > MAX_CACHED_FILES) && iterator.hasNext()) {
+            Map.Entry<String, CachedEmbed> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            cachedChars -= eldest.getValue().chars();
+            iterator.remove();
+        }
+    }
+
+    private synchronized void onEmbedChanged(String relativePath, WatchEvent.Kind<?> kind) {
+        invalidationCount++;
+        if (relativePath == null) {
+            invalidateAll();
+            return;
+        }
+        String key = cacheKey(relativePath);
+        CachedEmbed removed = entries.remove(key);
+        if (removed != null) {
+            cachedChars -= removed.chars();
+            log.debug("嵌入檔案已變動，移除快取: {}", relativePath);
+        }
+        // 目錄被刪除或更名時，底下的檔案不會個別通知
+        if (!key.endsWith(".txt")) {
+            String prefix = key + "/";
+            entries.entrySet().removeIf(entry -> {
+                boolean nested = entry.getKey().startsWith(prefix);
+                if (nested) {
+                    cachedChars -= entry.getValue().chars();
+                }
+                return nested;
+            });
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidationCount++;
+        entries.clear();
+        cachedChars = 0;
+    }
+
+    // lineTemplates 與 lines 一一對應，行內含有其他嵌入標籤時才會有 Embed 節點；lines 已去除權重後綴
+    public record EmbedContent(List<String> lines, List<PromptTemplate> lineTemplates, TagSampler sampler) {
+    }
+
+    private record CachedEmbed(EmbedContent content, long chars, boolean exists) {
+    }
+}
@@ -1,111 +1,170 @@
 package com.zxzinn.novelai.utils.embed;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import com.zxzinn.novelai.utils.common.CommonPaths;
-import lombok.SneakyThrows;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 
+// 嵌入檔案索引：背景完成初次掃描後依 EmbedWatcher 的事件增量更新，讀取端只會看到完整的不可變快照
 @Log4j2
 public class EmbedFileManager {
-    private static final String EMBEDS_DIRECTORY = CommonPaths.EMBEDS_DIRECTORY;
-    private List<EmbedFile> allEmbeds;
+    private static final int MAX_MATCHES = 10;
+    private final ExecutorProvider executorProvider;
+    private final Path embedsPath;
+    private volatile EmbedIndex index;
+    // 掃描進行中收到的變動先記下，掃描結果發布後再逐一套用
+    private Set<String> changesDuringScan;
+    private boolean rescanPending;
+
+    private static class LazyHolder {
+        static final EmbedFileManager INSTANCE = new EmbedFileManager(
+                Paths.get(CommonPaths.EMBEDS_DIRECTORY), ExecutorProvider.getInstance(), EmbedWatcher.getInstance());
+    }
+
+    public static EmbedFileManager getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private EmbedFileManager(Path embedsPath, ExecutorProvider executorProvider, EmbedWatcher embedWatcher) {
+        this.executorProvider = executorProvider;
+        this.embedsPath = embedsPath;
+        this.index = EmbedIndex.empty();
+        // 先註冊監聽再掃描，掃描期間發生的變動才不會遺漏
+        embedWatcher.addListener(this::onEmbedChanged);
+        rescanAsync();
+    }
 
-    public EmbedFileManager() {
-        allEmbeds = new ArrayList<>();
-        CompletableFuture.runAsync(this::scanEmbedFiles)
+    public CompletableFuture<Void> rescanAsync() {
+        return CompletableFuture.runAsync(this::scanEmbedFiles, executorProvider.getIoExecutor())
                 .exceptionally(ex -> {
                     log.error("Error scanning embed files", ex);
                     return null;
                 });
     }
 
-    @SneakyThrows
-    public void scanEmbedFiles() {
-        Path embedsPath = Paths.get(EMBEDS_DIRECTORY);
-        if (!Files.exists(embedsPath)) {
-            log.warn("嵌入目錄不存在: {}", EMBEDS_DIRECTORY);
-            return;
+    private void scanEmbedFiles() {
+        synchronized (this) {
+            if (changesDuringScan != null) {
+                // 掃描中又要求重新掃描（例如 OVERFLOW），目前的掃描可能已錯過變動，結束後再掃一次
+                rescanPending = true;
+                return;
+            }
+            changesDuringScan = new HashSet<>();
         }
 
-        try (Stream<Path> pathStream = Files.walk(embedsPath)) {
-            allEmbeds = pathStream
+        boolean scanAgain;
+        do {
+            List<EmbedFile> files = null;
+            try {
+                if (Files.exists(embedsPath)) {
+                    files = walkEmbedFiles(embedsPath);
+                } else {
+                    log.warn("嵌入目錄不存在: {}", embedsPath);
+                    files = List.of();
+                }
+            } catch (RuntimeException e) {
+                log.error("Error scanning embed files", e);
+            } finally {
+                synchronized (this) {
+                    // 掃描失敗時保留原本的索引
+                    EmbedIndex scanned = files != null ? EmbedIndex.build(files) : index;
+                    for (String relativePath : changesDuringScan) {
+                        scanned = reconcile(scanned, relativePath);
+                    }
+                    index = scanned;
+                    scanAgain = rescanPending;
+                    rescanPending = false;
+                    changesDuringScan = scanAgain ? new HashSet<>() : null;
+                }
+            }
+            if (files != null) {
+                log.info("掃描並索引了 {} 個嵌入文件", files.size());
+            }
+        } while (scanAgain);
+    }
+
+    private List<EmbedFile> walkEmbedFiles(Path root) {
+        try (Stream<Path> pathStream = Files.walk(root)) {
+            return pathStream
                     .filter(Files::isRegularFile)
-                    .map(path -> {
-                        String relativePath = embedsPath.relativize(path).toString().replaceAll("\\\\", "/");
-                        String fileName = path.getFileName().toString().replaceAll("\\.txt$", "");
-                        String folder = relativePath.contains("/")
-                                ? relativePath.substring(0, relativePath.lastIndexOf('/'))
-                                : "";
-                        return new EmbedFile(fileName, folder, relativePath);
-                    })
+                    .map(this::toEmbedFile)
                     .toList();
-
-            log.info("掃描並索引了 {} 個嵌入文件", allEmbeds.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    public CompletableFuture<List<EmbedFile>> getMatchingEmbedsAsync(String query) {
-        return CompletableFuture.supplyAsync(() -> getMatchingEmbeds(query));
-    }
-
-    private List<EmbedFile> getMatchingEmbeds(@NotNull String query) {
-        String lowercaseQuery = query.toLowerCase();
-        return allEmbeds.stream()
-                .filter(embed -> fuzzyMatch(embed.fullPath().toLowerCase(), lowercaseQuery))
-                .sorted((a, b) -> {
-                    int scoreA = calculateMatchScore(a.fullPath().toLowerCase(), lowercaseQuery);
-                    int scoreB = calculateMatchScore(b.fullPath().toLowerCase(), lowercaseQuery);
-                    return Integer.compare(scoreB, scoreA); // Descending order
-                })
-                .limit(10)
-                .collect(Collectors.toList());
-    }
-
-    private boolean fuzzyMatch(@NotNull String embed, String query) {
-        int embedIndex = 0;
-        int queryIndex = 0;
-        while (embedIndex < embed.length() && queryIndex < query.length()) {
-            if (embed.charAt(embedIndex) == query.charAt(queryIndex)) {
-                queryIndex++;
+    private void onEmbedChanged(String relativePath, WatchEvent.Kind<?> kind) {
+        // OVERFLOW 代表事件已遺失，只能整個重新掃描
+        if (relativePath == null) {
+            rescanAsync();
+            return;
+        }
+        // 資料夾的 MODIFY 只是子項目變動，子項目本身會另有事件
+        if (kind == StandardWatchEventKinds.ENTRY_MODIFY && Files.isDirectory(embedsPath.resolve(relativePath))) {
+            return;
+        }
+        synchronized (this) {
+            if (changesDuringScan != null) {
+                changesDuringScan.add(relativePath);
+                return;
             }
-            embedIndex++;
+            index = reconcile(index, relativePath);
         }
-        return queryIndex == query.length();
     }
 
-    private int calculateMatchScore(@NotNull String embed, String query) {
-        int score = 0;
-        int embedIndex = 0;
-        int queryIndex = 0;
-        boolean lastMatched = false;
-
-        while (embedIndex < embed.length() && queryIndex < query.length()) {
-            if (embed.charAt(embedIndex) == query.charAt(queryIndex)) {
-                score += lastMatched ? 2 : 1;
-                lastMatched = true;
-                queryIndex++;
-            } else {
-                lastMatched = false;
+    // 依檔案系統目前的狀態更新單一路徑：檔案則加入，資料夾則加入其下所有檔案，不存在則移除該路徑與其下所有項目
+    private EmbedIndex reconcile(EmbedIndex current, String relativePath) {
+        Path path = embedsPath.resolve(relativePath);
+        if (Files.isRegularFile(path)) {
+            return current.withChanges(List.of(toEmbedFile(path)), List.of());
+        }
+        if (Files.isDirectory(path)) {
+            try {
+                return current.withChanges(walkEmbedFiles(path), List.of());
+            } catch (UncheckedIOException e) {
+                log.error("無法掃描新增的嵌入資料夾: {}", relativePath, e);
+                return current;
             }
-            embedIndex++;
         }
-
-        if (queryIndex == query.length()) {
-            score += 5;
+        String folderPrefix = relativePath + "/";
+        List<String> removed = new ArrayList<>();
+        for (EmbedFile file : current.files()) {
+            if (file.fullPath().equals(relativePath) || file.fullPath().startsWith(folderPrefix)) {
+                removed.add(file.fullPath());
+            }
         }
+        return current.withChanges(List.of(), removed);
+    }
 
-        if (embed.startsWith(query)) {
-            score += 3;
-        }
+    @NotNull
+    private EmbedFile toEmbedFile(Path path) {
+        String relativePath = embedsPath.relativize(path).toString().replace('\\', '/');
+        String fileName = path.getFileName().toString().replaceAll("\\.txt$", "");
+        String folder = relativePath.contains("/")
+                ? relativePath.substring(0, relativePath.lastIndexOf('/'))
+                : "";
+        return new EmbedFile(fileName, folder, relativePath);
+    }
+
+    public List<EmbedFile> getAllEmbeds() {
+        return index.files();
+    }
+
+    public CompletableFuture<List<EmbedIndex.Match>> getMatchingEmbedsAsync(String query) {
+        return CompletableFuture.supplyAsync(() -> getMatchingEmbeds(query), executorProvider.getCpuExecutor());
+    }
 
-        return score;
+    private List<EmbedIndex.Match> getMatchingEmbeds(@NotNull String query) {
+        return index.search(query, MAX_MATCHES);
     }
 
     public record EmbedFile(String fileName, String folder, String fullPath) { }
-}
\ No newline at end of file
+}
@@ -0,0 +1,238 @@
+package com.zxzinn.novelai.utils.embed;
+
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+// 嵌入檔案的自動完成索引：小寫鍵只計算一次，以排序前綴與三字元組 (trigram) 找候選，每個候選只評分一次
+// 索引本身不可變，更新時複製受影響的部分並回傳新索引，讀取端不需加鎖
+public final class EmbedIndex {
+    public static final int MAX_EDIT_DISTANCE = 2;
+    private static final int GRAM_LENGTH = 3;
+    private static final char KEY_SEPARATOR = '\u0000';
+    private static final LevenshteinDistance LEVENSHTEIN = new LevenshteinDistance(MAX_EDIT_DISTANCE);
+    private static final EmbedIndex EMPTY = new EmbedIndex(new LinkedHashMap<>(), new TreeMap<>(), new HashMap<>());
+
+    private final Map<String, Entry> entriesByPath;
+    private final NavigableMap<String, Entry> prefixIndex;
+    private final Map<String, List<Entry>> trigramIndex;
+
+    private EmbedIndex(Map<String, Entry> entriesByPath, NavigableMap<String, Entry> prefixIndex,
+                       Map<String, List<Entry>> trigramIndex) {
+        this.entriesByPath = entriesByPath;
+        this.prefixIndex = prefixIndex;
+        this.trigramIndex = trigramIndex;
+    }
+
+    public static EmbedIndex empty() {
+        return EMPTY;
+    }
+
+    public static EmbedIndex build(@NotNull Collection<EmbedFileManager.EmbedFile> files) {
+        return EMPTY.withChanges(files, List.of());
+    }
+
+    public int size() {
+        return entriesByPath.size();
+    }
+
+    public List<EmbedFileManager.EmbedFile> files() {
+        return entriesByPath.values().stream().map(Entry::file).toList();
+    }
+
+    public boolean contains(String fullPath) {
+        return entriesByPath.containsKey(fullPath);
+    }
+
+    // 只複製變動到的 trigram 清單，其餘結構共用
+    public EmbedIndex withChanges(@NotNull Collection<EmbedFileManager.EmbedFile> added, @NotNull Collection<String> removedPaths) {
+        if (added.isEmpty() && removedPaths.isEmpty()) {
+            return this;
+        }
+        Map<String, Entry> newEntries = new LinkedHashMap<>(entriesByPath);
+        NavigableMap<String, Entry> newPrefixIndex = new TreeMap<>(prefixIndex);
+        Map<String, List<Entry>> newTrigramIndex = new HashMap<>(trigramIndex);
+        Set<String> copiedPostings = new HashSet<>();
+
+        List<Entry> removedEntries = new ArrayList<>();
+        for (String path : removedPaths) {
+            Entry removed = newEntries.remove(path);
+            if (removed != null) {
+                removedEntries.add(removed);
+            }
+        }
+        for (EmbedFileManager.EmbedFile file : added) {
+            Entry previous = newEntries.remove(file.fullPath());
+            if (previous != null) {
+                removedEntries.add(previous);
+            }
+        }
+
+        for (Entry entry : removedEntries) {
+            newPrefixIndex.remove(entry.nameKey());
+            newPrefixIndex.remove(entry.pathKey());
+            for (String gram : entry.trigrams()) {
+                removeFromPosting(newTrigramIndex, copiedPostings, gram, entry);
+            }
+        }
+        for (EmbedFileManager.EmbedFile file : added) {
+            Entry entry = Entry.of(file);
+            newEntries.put(file.fullPath(), entry);
+            newPrefixIndex.put(entry.nameKey(), entry);
+            newPrefixIndex.put(entry.pathKey(), entry);
+            for (String gram : entry.trigrams()) {
+                mutablePosting(newTrigramIndex, copiedPostings, gram).add(entry);
+            }
+        }
+        return new EmbedIndex(newEntries, newPrefixIndex, newTrigramIndex);
+    }
+
+    private static void removeFromPosting(Map<String, List<Entry>> index, Set<String> copied, String key, Entry entry) {
+        List<Entry> posting = mutablePosting(index, copied, key);
+        posting.remove(entry);
+        if (posting.isEmpty()) {
+            index.remove(key);
+            copied.remove(key);
+        }
+    }
+
+    // 每個倒排清單在一次更新中只複製一次，舊索引的清單保持不變
+    private static List<Entry> mutablePosting(Map<String, List<Entry>> index, Set<String> copied, String key) {
+        if (copied.add(key)) {
+            List<Entry> copy = new ArrayList<>(index.getOrDefault(key, List.of()));
+            index.put(key, copy);
+            return copy;
+        }
+        return index.get(key);
+    }
+
+    // 依分數取前 limit 筆，結果與逐一比對全部項目相同（同分項目的順序可能不同）；編輯距離只對最後回傳的項目計算
+    public List<Match> search(@NotNull String query, int limit) {
+        String lowercaseQuery = query.toLowerCase();
+        List<Match> matches = scoreMatches(candidatesFor(lowercaseQuery), lowercaseQuery);
+        // 候選以外的項目也可能是子序列比對成功的結果（例如 "ace" 對 "abcde"），但分數有上限；
+        // 候選中不足 limit 筆高於該上限時，無法確定前 limit 筆，退回逐一比對
+        if (limit > 0 && lowercaseQuery.length() >= GRAM_LENGTH
+                && (matches.size() < limit || matches.get(limit - 1).score() <= maxScoreWithoutCandidate(lowercaseQuery))) {
+            matches = scoreMatches(entriesByPath.values(), lowercaseQuery);
+        }
+        List<Match> top = matches.size() > limit ? matches.subList(0, Math.max(limit, 0)) : matches;
+
+        List<Match> result = new ArrayList<>(top.size());
+        for (Match match : top) {
+            result.add(new Match(match.file(), match.score(), LEVENSHTEIN.apply(query, match.file().fileName())));
+        }
+        return result;
+    }
+
+    private static List<Match> scoreMatches(Collection<Entry> entries, String lowercaseQuery) {
+        List<Match> matches = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (fuzzyMatch(entry.lowerPath(), lowercaseQuery)) {
+                matches.add(new Match(entry.file(), calculateMatchScore(entry.lowerPath(), lowercaseQuery), -1));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::score).reversed());
+        return matches;
+    }
+
+    // 不是候選的項目不以查詢字串開頭，也沒有共用的 trigram，連續比對最多兩個字元，每兩個字元最多得 3 分
+    private static int maxScoreWithoutCandidate(String lowercaseQuery) {
+        int length = lowercaseQuery.length();
+        return 3 * (length / 2) + length % 2 + 5;
+    }
+
+    // 檔名或完整路徑以查詢字串開頭，或與查詢字串至少共用一個 trigram 的項目；
+    // 查詢短於一個 trigram 時沒有可用的倒排清單，退回逐一比對
+    private Collection<Entry> candidatesFor(String lowercaseQuery) {
+        if (lowercaseQuery.length() < GRAM_LENGTH) {
+            return entriesByPath.values();
+        }
+        Set<Entry> candidates = new LinkedHashSet<>();
+        prefixIndex.subMap(lowercaseQuery, true, lowercaseQuery + Character.MAX_VALUE, true)
+                .values().forEach(candidates::add);
+        for (String gram : trigramsOf(lowercaseQuery)) {
+            candidates.addAll(trigramIndex.getOrDefault(gram, List.of()));
+        }
+        return candidates;
+    }
+
+    private static boolean fuzzyMatch(@NotNull String embed, String query) {
+        int embedIndex = 0;
+        int queryIndex = 0;
+        while (embedIndex < embed.length() && queryIndex < query.length()) {
+            if (embed.charAt(embedIndex) == query.charAt(queryIndex)) {
+                queryIndex++;
+            }
+            embedIndex++;
+        }
+        return queryIndex == query.length();
+    }
+
+    private static int calculateMatchScore(@NotNull String embed, String query) {
+        int score = 0;
+        int embedIndex = 0;
+        int queryIndex = 0;
+        boolean lastMatched = false;
+
+        while (embedIndex < embed.length() && queryIndex < query.length()) {
+            if (embed.charAt(embedIndex) == query.charAt(queryIndex)) {
+                score += lastMatched ? 2 : 1;
+                lastMatched = true;
+                queryIndex++;
+            } else {
+                lastMatched = false;
+            }
+            embedIndex++;
+        }
+
+        if (queryIndex == query.length()) {
+            score += 5;
+        }
+
+        if (embed.startsWith(query)) {
+            score += 3;
+        }
+
+        return score;
+    }
+
+    private static Set<String> trigramsOf(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    // distance 為與檔名的編輯距離，超過 MAX_EDIT_DISTANCE 時為 -1
+    public record Match(EmbedFileManager.EmbedFile file, int score, int distance) {
+
+        public boolean isClose() {
+            return distance >= 0;
+        }
+    }
+
+    private record Entry(EmbedFileManager.EmbedFile file, String lowerPath, String nameKey, String pathKey,
+                         Set<String> trigrams) {
+
+        static Entry of(EmbedFileManager.EmbedFile file) {
+            String lowerPath = file.fullPath().toLowerCase();
+            String lowerName = file.fileName().toLowerCase();
+            return new Entry(file, lowerPath, lowerName + KEY_SEPARATOR + lowerPath, lowerPath + KEY_SEPARATOR,
+                    Set.copyOf(trigramsOf(lowerPath)));
+        }
+
+        // 以路徑判斷相等，避免 trigram 集合參與比較
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry entry && lowerPath.equals(entry.lowerPath) && file.equals(entry.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode();
+        }
+    }
+}
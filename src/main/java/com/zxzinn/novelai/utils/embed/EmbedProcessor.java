@@ -1,177 +1,243 @@
 package com.zxzinn.novelai.utils.embed;
 
-import com.zxzinn.novelai.utils.common.CommonPaths;
+import com.zxzinn.novelai.model.ExpandedPrompt;
+import com.zxzinn.novelai.model.PromptFootprint;
 import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 @Log4j2
 public class EmbedProcessor {
-    private static final String EMBEDS_DIRECTORY = CommonPaths.EMBEDS_DIRECTORY;
+    private static final int MAX_CACHED_TEMPLATES = 256;
+    private static final int MAX_EXPANSION_DEPTH = 8;
+    private static final String NULL_DEFAULT_SUFFIX = "=null}";
+    private static final long POSITIVE_PROMPT_SALT = 0x9E3779B97F4A7C15L;
+    private static final long NEGATIVE_PROMPT_SALT = 0xC2B2AE3D27D4EB4FL;
+
     private final EmbedDetector embedDetector;
-    private final Random random;
+    private final EmbedCache embedCache;
+    // 同一段提示詞只解析一次，之後每次生成只需做隨機選擇
+    private final Map<String, PromptTemplate> compiledTemplates;
 
     public EmbedProcessor() {
+        this(EmbedCache.getInstance());
+    }
+
+    public EmbedProcessor(EmbedCache embedCache) {
         this.embedDetector = new EmbedDetector();
-        this.random = new Random();
+        this.embedCache = embedCache;
+        this.compiledTemplates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PromptTemplate> eldest) {
+                return size() > MAX_CACHED_TEMPLATES;
+            }
+        };
     }
 
     public String processPrompt(String input) {
-        log.info("Processing prompt: {}", input);
+        return expand(input, ThreadLocalRandom.current().nextLong()).text();
+    }
+
+    // 每次展開使用獨立的亂數產生器，不同執行緒平行展開時結果同樣可重現
+    public ExpandedPrompt expand(String input, long seed) {
+        log.debug("Processing prompt with seed {}: {}", seed, input);
 
-        String processedInput = processEmbeds(input);
+        String processedInput = evaluate(compile(input), new SplittableRandom(seed));
         String finalResult = processStringPatterns(processedInput);
 
-        log.info("Final processed prompt: {}", finalResult);
-        return finalResult;
+        log.debug("Final processed prompt: {}", finalResult);
+        return new ExpandedPrompt(finalResult, seed);
     }
 
+    // 正向與負向提示詞各自從生成種子衍生出不同的展開種子
+    public static long deriveExpansionSeed(long generationSeed, boolean isPositive) {
+        long salt = isPositive ? POSITIVE_PROMPT_SALT : NEGATIVE_PROMPT_SALT;
+        return new SplittableRandom(generationSeed ^ salt).nextLong();
+    }
+
+    // 提示詞最外層出現的嵌入名稱，依出現順序且不重複，供使用者選擇矩陣的軸
+    @NotNull
+    public List<String> embedNames(String input) {
+        return compile(input).nodes().stream()
+                .filter(node -> node instanceof PromptTemplate.Embed)
+                .map(node -> ((PromptTemplate.Embed) node).name())
+                .distinct()
+                .toList();
+    }
+
+    // 列舉提示詞中嵌入標籤的所有組合；axisNames 為 null 時列舉最外層的全部嵌入
     @NotNull
-    private String processEmbeds(String input) {
-        List<EmbedDetector.EmbedTag> embeds = embedDetector.detectEmbeds(input);
-        StringBuilder result = new StringBuilder(input);
-
-        for (int i = embeds.size() - 1; i >= 0; i--) {
-            EmbedDetector.EmbedTag embed = embeds.get(i);
-            try {
-                List<String> generatedTags = processEmbedFile(embed.name(), embed.sampling(), embed.bracketing());
-
-                if (!generatedTags.isEmpty()) {
-                    String replacement = String.join(",", generatedTags);
-                    result.replace(embed.start(), embed.end(), replacement);
-                    log.debug("Generated tags for {}: {}", embed.name(), generatedTags);
+    public PromptMatrix matrix(String input, Set<String> axisNames, long baseSeed) {
+        return PromptMatrix.of(this, compile(input), embedCache, axisNames, baseSeed);
+    }
+
+    // contents 與 selections 與模板節點一一對應，不為 null 的位置使用建立矩陣時的檔案內容與指定的行，其餘嵌入照常隨機展開
+    @NotNull
+    ExpandedPrompt expandSelection(@NotNull PromptTemplate template, EmbedCache.EmbedContent[] contents,
+                                   int[][] selections, long seed) {
+        RandomGenerator random = new SplittableRandom(seed);
+        StringBuilder result = new StringBuilder();
+        Deque<String> expansionStack = new ArrayDeque<>();
+        List<PromptTemplate.Node> nodes = template.nodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            PromptTemplate.Node node = nodes.get(i);
+            if (node instanceof PromptTemplate.Literal literal) {
+                result.append(literal.text());
+            } else if (node instanceof PromptTemplate.Embed embed) {
+                if (selections[i] != null) {
+                    appendLines(result, embed, contents[i], selections[i], expansionStack, random);
                 } else {
-                    result.delete(embed.start(), embed.end());
-                    log.debug("No tags generated for: {}", embed.name());
+                    appendEmbed(result, embed, expansionStack, random);
                 }
-            } catch (IOException e) {
-                log.error("Error processing file for tag: {}. Error: {}", embed.name(), e.getMessage());
-                result.delete(embed.start(), embed.end());
             }
         }
-
-        return result.toString();
+        return new ExpandedPrompt(processStringPatterns(result.toString()), seed);
     }
 
-    private List<String> processEmbedFile(@NotNull String tagName, String sampling, String bracketing) throws IOException {
-        String filePath = EMBEDS_DIRECTORY + File.separator + tagName.replace("/", File.separator) + ".txt";
-        File file = new File(filePath);
+    // 只看模板結構與各檔案的統計估算展開後的規模，不做任何隨機選擇
+    @NotNull
+    public PromptFootprint analyze(String input, @NotNull EmbedStatistics statistics) {
+        return statistics.analyze(compile(input));
+    }
 
-        if (!file.exists()) {
-            throw new FileNotFoundException("Text file not found: " + filePath);
+    @NotNull
+    public PromptTemplate compile(String input) {
+        String key = input == null ? "" : input;
+        synchronized (compiledTemplates) {
+            return compiledTemplates.computeIfAbsent(key, prompt -> PromptTemplate.compile(prompt, embedDetector));
         }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            List<String> allTags = reader.lines()
-                    .map(String::trim)
-                    .filter(line -> !line.isEmpty())
-                    .collect(Collectors.toList());
+    @NotNull
+    private String evaluate(@NotNull PromptTemplate template, RandomGenerator random) {
+        StringBuilder result = new StringBuilder();
+        evaluate(template, result, new ArrayDeque<>(), random);
+        return result.toString();
+    }
 
-            if (sampling == null || sampling.isEmpty() || !isValidSampling(sampling)) {
-                return applyBracketing(allTags, bracketing);
-            } else {
-                int sampleSize = getSampleSize(sampling, allTags.size());
-                List<String> sampledTags = selectRandomTags(allTags, sampleSize);
-                return applyBracketing(sampledTags, bracketing);
+    // expansionStack 記錄目前展開路徑上的嵌入檔案，用來限制深度與偵測循環引用
+    private void evaluate(@NotNull PromptTemplate template, StringBuilder result, Deque<String> expansionStack,
+                          RandomGenerator random) {
+        for (PromptTemplate.Node node : template.nodes()) {
+            if (node instanceof PromptTemplate.Literal literal) {
+                result.append(literal.text());
+            } else if (node instanceof PromptTemplate.Embed embed) {
+                appendEmbed(result, embed, expansionStack, random);
             }
         }
     }
 
-    private List<String> applyBracketing(List<String> tags, String bracketing) {
-        if (bracketing == null || bracketing.isEmpty() || !isValidBracketing(bracketing)) {
-            return tags;
+    private void appendEmbed(StringBuilder result, PromptTemplate.Embed embed, Deque<String> expansionStack,
+                             RandomGenerator random) {
+        if (expansionStack.size() >= MAX_EXPANSION_DEPTH) {
+            log.warn("嵌入展開超過最大深度 {}，略過: {} (路徑: {})", MAX_EXPANSION_DEPTH, embed.name(), expansionStack);
+            return;
         }
-
-        return tags.stream()
-                .map(tag -> applyBracketToTag(tag, bracketing))
-                .collect(Collectors.toList());
-    }
-
-    private String applyBracketToTag(String tag, String bracketing) {
-        int bracketCount = getBracketCount(bracketing);
-        if (bracketCount == 0) {
-            return tag;
+        if (expansionStack.contains(embed.name())) {
+            log.warn("偵測到循環引用的嵌入檔案，略過: {} (路徑: {})", embed.name(), expansionStack);
+            return;
         }
-        String openBracket = bracketCount > 0 ? "{" : "[";
-        String closeBracket = bracketCount > 0 ? "}" : "]";
-        return openBracket.repeat(Math.abs(bracketCount)) + tag + closeBracket.repeat(Math.abs(bracketCount));
-    }
 
-    private boolean isValidSampling(@NotNull String sampling) {
-        return sampling.matches("\\d+") || sampling.matches("\\d+~\\d+");
-    }
-
-    private boolean isValidBracketing(@NotNull String bracketing) {
-        return bracketing.matches("-?\\d+") || bracketing.matches("-?\\d+~-?\\d+");
-    }
-
-    private int getSampleSize(@NotNull String sampling, int totalTags) {
         try {
-            if (sampling.contains("~")) {
-                String[] range = sampling.split("~");
-                if (range.length != 2) {
-                    log.warn("Invalid sampling range: {}", sampling);
-                    return totalTags;
-                }
-                int min = Integer.parseInt(range[0]);
-                int max = Integer.parseInt(range[1]);
-                return new Random().nextInt(max - min + 1) + min;
+            EmbedCache.EmbedContent content = embedCache.getContent(embed.name());
+            int[] selected = selectTagIndices(content, embed.sampling(), random);
+            appendLines(result, embed, content, selected, expansionStack, random);
+            log.debug("Generated {} tags for {}", selected.length, embed.name());
+        } catch (FileNotFoundException e) {
+            // 嵌入檔案中的 <...> 不一定是引用，例如 "<key>_(blue_archive)"，找不到對應檔案時保留原文
+            if (expansionStack.isEmpty()) {
+                log.error("Error processing file for tag: {}. Error: {}", embed.name(), e.getMessage());
             } else {
-                return Math.min(Integer.parseInt(sampling), totalTags);
+                result.append(embed.source());
             }
-        } catch (NumberFormatException e) {
-            log.warn("Invalid sampling format: {}", sampling);
-            return totalTags;
+        } catch (IOException e) {
+            log.error("Error processing file for tag: {}. Error: {}", embed.name(), e.getMessage());
         }
     }
 
-    private int getBracketCount(@NotNull String bracketing) {
+    private void appendLines(StringBuilder result, PromptTemplate.Embed embed, EmbedCache.EmbedContent content,
+                             int[] selected, Deque<String> expansionStack, RandomGenerator random) {
+        expansionStack.push(embed.name());
         try {
-            if (bracketing.contains("~")) {
-                String[] range = bracketing.split("~");
-                if (range.length != 2) {
-                    log.warn("Invalid bracketing range: {}", bracketing);
-                    return 0;
+            for (int i = 0; i < selected.length; i++) {
+                if (i > 0) {
+                    result.append(',');
                 }
-                int min = Integer.parseInt(range[0]);
-                int max = Integer.parseInt(range[1]);
-                return random.nextInt(max - min + 1) + min;
-            } else {
-                return Integer.parseInt(bracketing);
+                appendBracketed(result, content.lineTemplates().get(selected[i]), embed.bracketing(), expansionStack, random);
             }
-        } catch (NumberFormatException e) {
-            log.warn("Invalid bracketing format: {}", bracketing);
-            return 0;
+        } finally {
+            expansionStack.pop();
         }
     }
 
-    @NotNull
-    private List<String> selectRandomTags(List<String> tags, int count) {
-        List<String> shuffled = new ArrayList<>(tags);
-        Collections.shuffle(shuffled);
-        return shuffled.subList(0, Math.min(count, shuffled.size()));
+    private int[] selectTagIndices(EmbedCache.EmbedContent content, PromptTemplate.IntRange sampling, RandomGenerator random) {
+        if (sampling == null) {
+            return content.sampler().selectable();
+        }
+        return content.sampler().sample(sampling.pick(random), random);
     }
 
+    // 每個標籤各自抽一次括號層數，標籤本身若含有嵌入會先遞迴展開
+    private void appendBracketed(StringBuilder result, PromptTemplate tag, PromptTemplate.IntRange bracketing,
+                                 Deque<String> expansionStack, RandomGenerator random) {
+        int bracketCount = bracketing == null ? 0 : bracketing.pick(random);
+        char openBracket = bracketCount > 0 ? '{' : '[';
+        char closeBracket = bracketCount > 0 ? '}' : ']';
+        int depth = Math.abs(bracketCount);
+        result.repeat(openBracket, depth);
+        evaluate(tag, result, expansionStack, random);
+        result.repeat(closeBracket, depth);
+    }
+
+    // 將 {name=null} 還原為 {name}，再合併連續逗號並去掉首尾逗號
     @NotNull
     private String processStringPatterns(String input) {
-        Pattern bracketPattern = Pattern.compile("\\{(\\w+)(?:=null)?}");
-        Matcher bracketMatcher = bracketPattern.matcher(input);
+        String withoutNullDefaults = input.contains(NULL_DEFAULT_SUFFIX) ? stripNullDefaults(input) : input;
+        return collapseCommas(withoutNullDefaults);
+    }
 
-        StringBuilder stringBuilder = new StringBuilder();
-        while (bracketMatcher.find()) {
-            String replacement = "{" + bracketMatcher.group(1) + "}";
-            bracketMatcher.appendReplacement(stringBuilder, Matcher.quoteReplacement(replacement));
+    @NotNull
+    private static String stripNullDefaults(String input) {
+        StringBuilder result = new StringBuilder(input.length());
+        int position = 0;
+        int suffix;
+        while ((suffix = input.indexOf(NULL_DEFAULT_SUFFIX, position)) >= 0) {
+            int nameStart = suffix;
+            while (nameStart > position && isWordChar(input.charAt(nameStart - 1))) {
+                nameStart--;
+            }
+            boolean isPlaceholder = nameStart < suffix && nameStart > position && input.charAt(nameStart - 1) == '{';
+            if (isPlaceholder) {
+                result.append(input, position, suffix).append('}');
+            } else {
+                result.append(input, position, suffix + NULL_DEFAULT_SUFFIX.length());
+            }
+            position = suffix + NULL_DEFAULT_SUFFIX.length();
         }
-        bracketMatcher.appendTail(stringBuilder);
+        return result.append(input, position, input.length()).toString();
+    }
 
-        String result = stringBuilder.toString();
-        result = result.replaceAll(",,+", ",").replaceAll("^,|,$", "");
+    private static boolean isWordChar(char c) {
+        return c == '_' || (c < 128 && Character.isLetterOrDigit(c));
+    }
 
-        return result;
+    @NotNull
+    private static String collapseCommas(String input) {
+        StringBuilder result = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == ',' && !result.isEmpty() && result.charAt(result.length() - 1) == ',') {
+                continue;
+            }
+            result.append(c);
+        }
+        int start = !result.isEmpty() && result.charAt(0) == ',' ? 1 : 0;
+        int end = result.length() > start && result.charAt(result.length() - 1) == ',' ? result.length() - 1 : result.length();
+        return result.substring(start, end);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,243 @@
+package com.zxzinn.novelai.utils.embed;
+
+import com.zxzinn.novelai.model.PromptFootprint;
+import com.zxzinn.novelai.model.PromptFootprint.Estimate;
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.WatchEvent;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+// 依模板結構估算展開後的標籤數與 token 數；每個嵌入檔案的逐行統計只算一次，檔案變動時清除。
+// 全程式共用一個實例，由 start 向 EmbedWatcher 註冊、stop 移除
+@Log4j2
+public class EmbedStatistics {
+    private static final int MAX_EXPANSION_DEPTH = 8;
+    private static final int MAX_CACHED_FILES = 512;
+
+    private final EmbedCache embedCache;
+    private final ToIntFunction<String> tokenCounter;
+    private final Map<String, FileStatistics> fileStatistics;
+    private final int separatorTokens;
+    // 巢狀嵌入的統計會併入上層檔案，任何檔案變動都可能影響其他檔案，因此全部清除
+    private final BiConsumer<String, WatchEvent.Kind<?>> changeListener = (relativePath, kind) -> clear();
+    private EmbedWatcher embedWatcher;
+
+    public EmbedStatistics(EmbedCache embedCache, ToIntFunction<String> tokenCounter) {
+        this.embedCache = embedCache;
+        this.tokenCounter = tokenCounter;
+        this.fileStatistics = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileStatistics> eldest) {
+                return size() > MAX_CACHED_FILES;
+            }
+        };
+        this.separatorTokens = tokenCounter.applyAsInt(",");
+    }
+
+    public synchronized void start(EmbedWatcher watcher) {
+        stop();
+        this.embedWatcher = watcher;
+        watcher.addListener(changeListener);
+    }
+
+    public synchronized void stop() {
+        if (embedWatcher != null) {
+            embedWatcher.removeListener(changeListener);
+            embedWatcher = null;
+        }
+        fileStatistics.clear();
+    }
+
+    public synchronized void clear() {
+        fileStatistics.clear();
+    }
+
+    @NotNull
+    public PromptFootprint analyze(@NotNull PromptTemplate template) {
+        List<PromptFootprint.EmbedFootprint> embeds = new ArrayList<>();
+        Estimate[] total = estimateTemplate(template, new ArrayDeque<>(), embeds);
+        return new PromptFootprint(total[0], total[1], List.copyOf(embeds));
+    }
+
+    // 回傳 {標籤數, token 數}；括號不會產生 token，因此不影響估算。embeds 不為 null 時記錄每個嵌入各自的估算
+    private Estimate[] estimateTemplate(@NotNull PromptTemplate template, Deque<String> expansionStack,
+                                        List<PromptFootprint.EmbedFootprint> embeds) {
+        Estimate tags = Estimate.ZERO;
+        Estimate tokens = Estimate.ZERO;
+        for (PromptTemplate.Node node : template.nodes()) {
+            if (node instanceof PromptTemplate.Literal literal) {
+                tags = tags.plus(Estimate.exactly(countTags(literal.text())));
+                tokens = tokens.plus(Estimate.exactly(tokenCounter.applyAsInt(literal.text())));
+            } else if (node instanceof PromptTemplate.Embed embed) {
+                Estimate[] estimate = estimateEmbed(embed, expansionStack);
+                if (embeds != null) {
+                    embeds.add(new PromptFootprint.EmbedFootprint(embed.name(), estimate[0], estimate[1]));
+                }
+                tags = tags.plus(estimate[0]);
+                tokens = tokens.plus(estimate[1]);
+            }
+        }
+        return new Estimate[]{tags, tokens};
+    }
+
+    private Estimate[] estimateEmbed(PromptTemplate.Embed embed, Deque<String> expansionStack) {
+        if (expansionStack.size() >= MAX_EXPANSION_DEPTH || expansionStack.contains(embed.name())) {
+            return new Estimate[]{Estimate.ZERO, Estimate.ZERO};
+        }
+        FileStatistics statistics = getFileStatistics(embed.name(), expansionStack);
+        if (statistics == null) {
+            // 與展開時相同，巢狀引用找不到檔案時原文照樣輸出
+            return expansionStack.isEmpty() ? new Estimate[]{Estimate.ZERO, Estimate.ZERO}
+                    : new Estimate[]{Estimate.exactly(countTags(embed.source())),
+                    Estimate.exactly(tokenCounter.applyAsInt(embed.source()))};
+        }
+        return statistics.estimate(embed.sampling(), separatorTokens);
+    }
+
+    private FileStatistics getFileStatistics(String name, Deque<String> expansionStack) {
+        EmbedCache.EmbedContent content;
+        try {
+            content = embedCache.getContent(name);
+        } catch (IOException e) {
+            log.debug("無法讀取嵌入檔案 {}: {}", name, e.getMessage());
+            return null;
+        }
+        synchronized (this) {
+            FileStatistics cached = fileStatistics.get(name);
+            if (cached != null && cached.source() == content) {
+                return cached;
+            }
+        }
+
+        expansionStack.push(name);
+        FileStatistics computed;
+        try {
+            computed = computeFileStatistics(content, expansionStack);
+        } finally {
+            expansionStack.pop();
+        }
+        synchronized (this) {
+            fileStatistics.put(name, computed);
+        }
+        return computed;
+    }
+
+    private FileStatistics computeFileStatistics(EmbedCache.EmbedContent content, Deque<String> expansionStack) {
+        List<PromptTemplate> lineTemplates = content.lineTemplates();
+        TagSampler sampler = content.sampler();
+        int lineCount = lineTemplates.size();
+
+        Estimate allTags = Estimate.ZERO;
+        Estimate allTokens = Estimate.ZERO;
+        int selectableCount = 0;
+        int[] tagMins = new int[lineCount];
+        int[] tagMaxes = new int[lineCount];
+        int[] tokenMins = new int[lineCount];
+        int[] tokenMaxes = new int[lineCount];
+        double totalWeight = 0;
+        double weightedTags = 0;
+        double weightedTokens = 0;
+        for (int i = 0; i < lineCount; i++) {
+            double weight = sampler.weight(i);
+            if (weight <= 0) {
+                continue;
+            }
+            Estimate[] line = estimateTemplate(lineTemplates.get(i), expansionStack, null);
+            allTags = allTags.plus(line[0]);
+            allTokens = allTokens.plus(line[1]);
+            tagMins[selectableCount] = line[0].min();
+            tagMaxes[selectableCount] = line[0].max();
+            tokenMins[selectableCount] = line[1].min();
+            tokenMaxes[selectableCount] = line[1].max();
+            selectableCount++;
+            totalWeight += weight;
+            weightedTags += weight * line[0].expected();
+            weightedTokens += weight * line[1].expected();
+        }
+
+        int separators = Math.max(selectableCount - 1, 0) * separatorTokens;
+        allTokens = allTokens.plus(Estimate.exactly(separators));
+        return new FileStatistics(content, selectableCount,
+                ascendingPrefixSums(tagMins, selectableCount), descendingPrefixSums(tagMaxes, selectableCount),
+                ascendingPrefixSums(tokenMins, selectableCount), descendingPrefixSums(tokenMaxes, selectableCount),
+                totalWeight > 0 ? weightedTags / totalWeight : 0,
+                totalWeight > 0 ? weightedTokens / totalWeight : 0,
+                allTags, allTokens);
+    }
+
+    // prefix[k] 為最小的 k 個值之和
+    private static int[] ascendingPrefixSums(int[] values, int count) {
+        int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int[] prefix = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            prefix[i + 1] = prefix[i] + sorted[i];
+        }
+        return prefix;
+    }
+
+    // prefix[k] 為最大的 k 個值之和
+    private static int[] descendingPrefixSums(int[] values, int count) {
+        int[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        int[] prefix = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            prefix[i + 1] = prefix[i] + sorted[count - 1 - i];
+        }
+        return prefix;
+    }
+
+    // 以逗號分隔、非空白的片段數視為標籤數
+    private static int countTags(String text) {
+        int tags = 0;
+        boolean inTag = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',') {
+                inTag = false;
+            } else if (!inTag && !Character.isWhitespace(c)) {
+                inTag = true;
+                tags++;
+            }
+        }
+        return tags;
+    }
+
+    // 期望值假設抽到的行與其內容獨立；有權重時以權重加權平均，抽多行時為近似值
+    private record FileStatistics(EmbedCache.EmbedContent source, int selectableCount,
+                                  int[] tagMinSums, int[] tagMaxSums, int[] tokenMinSums, int[] tokenMaxSums,
+                                  double meanTags, double meanTokens, Estimate allTags, Estimate allTokens) {
+
+        Estimate[] estimate(PromptTemplate.IntRange sampling, int separatorTokens) {
+            if (sampling == null) {
+                return new Estimate[]{allTags, allTokens};
+            }
+            int fewest = Math.clamp(sampling.min(), 0, selectableCount);
+            int most = Math.clamp(sampling.max(), 0, selectableCount);
+            // 取樣數在範圍內均勻分布，超過可選行數的部分會被截斷
+            double expectedPicks = 0;
+            double expectedSeparators = 0;
+            for (int k = sampling.min(); k <= sampling.max() && k <= selectableCount; k++) {
+                expectedPicks += k;
+                expectedSeparators += Math.max(k - 1, 0);
+            }
+            long clampedCount = Math.max(0L, (long) sampling.max() - Math.max(sampling.min(), selectableCount + 1) + 1);
+            expectedPicks += clampedCount * selectableCount;
+            expectedSeparators += clampedCount * Math.max(selectableCount - 1, 0);
+            double rangeSize = (double) sampling.max() - sampling.min() + 1;
+            expectedPicks /= rangeSize;
+            expectedSeparators /= rangeSize;
+
+            Estimate tags = new Estimate(tagMinSums[fewest], tagMaxSums[most], expectedPicks * meanTags);
+            Estimate tokens = new Estimate(
+                    tokenMinSums[fewest] + Math.max(fewest - 1, 0) * separatorTokens,
+                    tokenMaxSums[most] + Math.max(most - 1, 0) * separatorTokens,
+                    expectedPicks * meanTokens + expectedSeparators * separatorTokens);
+            return new Estimate[]{tags, tokens};
+        }
+    }
+}
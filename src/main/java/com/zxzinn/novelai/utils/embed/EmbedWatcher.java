@@ -0,0 +1,152 @@
+package com.zxzinn.novelai.utils.embed;
+
+import com.zxzinn.novelai.utils.common.CommonPaths;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+// 監看 embeds 目錄（含子目錄），將變動以相對路徑通知所有監聽者；OVERFLOW 時路徑為 null
+@Log4j2
+public class EmbedWatcher {
+    private final Path embedsPath;
+    private final List<BiConsumer<String, WatchEvent.Kind<?>>> listeners;
+    private final Map<WatchKey, Path> watchKeyToPath;
+    private WatchService watchService;
+
+    private static class LazyHolder {
+        static final EmbedWatcher INSTANCE = new EmbedWatcher(Paths.get(CommonPaths.EMBEDS_DIRECTORY));
+    }
+
+    public static EmbedWatcher getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private EmbedWatcher(Path embedsPath) {
+        this.embedsPath = embedsPath.toAbsolutePath().normalize();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.watchKeyToPath = new ConcurrentHashMap<>();
+    }
+
+    public void addListener(BiConsumer<String, WatchEvent.Kind<?>> listener) {
+        listeners.add(listener);
+        start();
+    }
+
+    public void removeListener(BiConsumer<String, WatchEvent.Kind<?>> listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized boolean isActive() {
+        return watchService != null;
+    }
+
+    // 目錄尚不存在時不啟動，呼叫端可稍後再試
+    public synchronized boolean start() {
+        if (watchService != null) {
+            return true;
+        }
+        if (!Files.isDirectory(embedsPath)) {
+            return false;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerRecursively(embedsPath);
+        } catch (IOException e) {
+            log.error("無法監看嵌入目錄: {}", embedsPath, e);
+            closeWatchService();
+            return false;
+        }
+        WatchService service = watchService;
+        ExecutorProvider.getInstance().getIoExecutor().execute(() -> processEvents(service));
+        log.info("開始監看嵌入目錄: {}", embedsPath);
+        return true;
+    }
+
+    private void registerRecursively(Path root) throws IOException {
+        try (Stream<Path> directories = Files.walk(root)) {
+            for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchKeyToPath.put(key, directory);
+            }
+        }
+    }
+
+    private void processEvents(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchKeyToPath.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    notifyListeners(null, StandardWatchEventKinds.OVERFLOW);
+                    continue;
+                }
+
+                Path fullPath = dir.resolve((Path) event.context());
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(fullPath)) {
+                    registerNewDirectory(fullPath);
+                }
+                notifyListeners(embedsPath.relativize(fullPath).toString().replace('\\', '/'), kind);
+            }
+
+            if (!key.reset()) {
+                watchKeyToPath.remove(key);
+            }
+        }
+    }
+
+    private synchronized void registerNewDirectory(Path directory) {
+        try {
+            if (watchService != null) {
+                registerRecursively(directory);
+            }
+        } catch (IOException e) {
+            log.error("無法監看新建立的嵌入子目錄: {}", directory, e);
+        }
+    }
+
+    private void notifyListeners(String relativePath, WatchEvent.Kind<?> kind) {
+        for (BiConsumer<String, WatchEvent.Kind<?>> listener : listeners) {
+            try {
+                listener.accept(relativePath, kind);
+            } catch (RuntimeException e) {
+                log.error("處理嵌入檔案變動時發生錯誤: {}", relativePath, e);
+            }
+        }
+    }
+
+    public synchronized void shutdown() {
+        closeWatchService();
+    }
+
+    private void closeWatchService() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("關閉嵌入目錄監看時發生錯誤", e);
+        }
+        watchService = null;
+        watchKeyToPath.clear();
+    }
+}
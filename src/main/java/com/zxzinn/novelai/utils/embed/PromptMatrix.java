@@ -0,0 +1,194 @@
+package com.zxzinn.novelai.utils.embed;
+
+import com.zxzinn.novelai.model.ExpandedPrompt;
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.*;
+
+// 提示詞矩陣：每個被選取的嵌入標籤是一個軸，列舉各軸取樣組合的笛卡兒積。
+// 依索引直接解碼出組合，不預先產生任何提示詞，因此可以只取其中一段或每隔幾組取一組。
+// 取樣數沿用 <name:數量> 語法，範圍 min~max 會列舉每個數量的所有組合；未指定數量時逐行列舉
+@Log4j2
+public final class PromptMatrix implements Iterable<ExpandedPrompt> {
+    private final EmbedProcessor embedProcessor;
+    private final PromptTemplate template;
+    private final List<Axis> axes;
+    private final long baseSeed;
+    private final long size;
+
+    private PromptMatrix(EmbedProcessor embedProcessor, PromptTemplate template, List<Axis> axes, long baseSeed, long size) {
+        this.embedProcessor = embedProcessor;
+        this.template = template;
+        this.axes = axes;
+        this.baseSeed = baseSeed;
+        this.size = size;
+    }
+
+    @NotNull
+    static PromptMatrix of(EmbedProcessor embedProcessor, @NotNull PromptTemplate template, EmbedCache embedCache,
+                           Set<String> axisNames, long baseSeed) {
+        List<Axis> axes = new ArrayList<>();
+        List<PromptTemplate.Node> nodes = template.nodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!(nodes.get(i) instanceof PromptTemplate.Embed embed)
+                    || (axisNames != null && !axisNames.contains(embed.name()))) {
+                continue;
+            }
+            try {
+                axes.add(Axis.of(i, embed, embedCache.getContent(embed.name())));
+            } catch (IOException e) {
+                log.warn("無法讀取嵌入檔案 {}，矩陣中改為隨機展開: {}", embed.name(), e.getMessage());
+            }
+        }
+
+        long size = axes.isEmpty() ? 0 : 1;
+        for (Axis axis : axes) {
+            size = multiplyOrThrow(size, axis.size());
+        }
+        return new PromptMatrix(embedProcessor, template, List.copyOf(axes), baseSeed, size);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public List<String> axisNames() {
+        return axes.stream().map(axis -> axis.embed().name()).toList();
+    }
+
+    // 第 index 組的展開種子，非軸嵌入與負面提示詞都由它衍生；圖像種子不隨組合改變，由呼叫端決定
+    public long expansionSeed(long index) {
+        return baseSeed + index;
+    }
+
+    @NotNull
+    public ExpandedPrompt get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("矩陣索引超出範圍: " + index + " / " + size);
+        }
+        int nodeCount = template.nodes().size();
+        EmbedCache.EmbedContent[] contents = new EmbedCache.EmbedContent[nodeCount];
+        int[][] selections = new int[nodeCount][];
+        long remaining = index;
+        for (Axis axis : axes) {
+            contents[axis.nodeIndex()] = axis.content();
+            selections[axis.nodeIndex()] = axis.combination(remaining % axis.size());
+            remaining /= axis.size();
+        }
+        long seed = EmbedProcessor.deriveExpansionSeed(expansionSeed(index), true);
+        return embedProcessor.expandSelection(template, contents, selections, seed);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<ExpandedPrompt> iterator() {
+        return strided(0, 1).iterator();
+    }
+
+    // 從 offset 開始每隔 stride 組取一組，例如 stride 為 10 時大約取出十分之一的組合
+    @NotNull
+    public Iterable<ExpandedPrompt> strided(long offset, long stride) {
+        if (offset < 0 || stride <= 0) {
+            throw new IllegalArgumentException("offset 不可為負數且 stride 必須大於 0");
+        }
+        return () -> new Iterator<>() {
+            private long position = offset;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public ExpandedPrompt next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ExpandedPrompt prompt = get(position);
+                position = position > size - stride ? size : position + stride;
+                return prompt;
+            }
+        };
+    }
+
+    private static long multiplyOrThrow(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("提示詞矩陣的組合數過多", e);
+        }
+    }
+
+    private static long addOrThrow(long a, long b) {
+        try {
+            return Math.addExact(a, b);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("提示詞矩陣的組合數過多", e);
+        }
+    }
+
+    private static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        k = Math.min(k, n - k);
+        long result = 1;
+        for (int i = 0; i < k; i++) {
+            result = multiplyOrThrow(result, n - i) / (i + 1);
+        }
+        return result;
+    }
+
+    // lines 為可被抽中的行（權重為 0 的行不列舉）；countsUpTo[j] 為取樣數 minPicks..minPicks+j-1 的組合總數
+    private record Axis(int nodeIndex, PromptTemplate.Embed embed, EmbedCache.EmbedContent content, int[] lines,
+                        int minPicks, long[] countsUpTo) {
+
+        static Axis of(int nodeIndex, PromptTemplate.Embed embed, EmbedCache.EmbedContent content) {
+            int[] lines = content.sampler().selectable();
+            int lineCount = lines.length;
+
+            PromptTemplate.IntRange sampling = embed.sampling();
+            int minPicks = sampling == null ? 1 : Math.min(sampling.min(), lineCount);
+            int maxPicks = sampling == null ? 1 : Math.min(sampling.max(), lineCount);
+            long[] countsUpTo = new long[maxPicks - minPicks + 2];
+            for (int k = minPicks; k <= maxPicks; k++) {
+                long count = binomial(lineCount, k);
+                countsUpTo[k - minPicks + 1] = addOrThrow(countsUpTo[k - minPicks], count);
+            }
+            return new Axis(nodeIndex, embed, content, lines, minPicks, countsUpTo);
+        }
+
+        long size() {
+            return countsUpTo[countsUpTo.length - 1];
+        }
+
+        // 先決定取樣數，再以組合數系統解出字典序第 rank 個組合
+        int[] combination(long rank) {
+            int picksOffset = 0;
+            while (rank >= countsUpTo[picksOffset + 1]) {
+                picksOffset++;
+            }
+            rank -= countsUpTo[picksOffset];
+            int picks = minPicks + picksOffset;
+
+            int[] combination = new int[picks];
+            int next = 0;
+            for (int j = 0; j < picks; j++) {
+                int remainingPicks = picks - j - 1;
+                if (remainingPicks == 0) {
+                    next += (int) rank;
+                } else {
+                    long count;
+                    while (rank >= (count = binomial(lines.length - next - 1, remainingPicks))) {
+                        rank -= count;
+                        next++;
+                    }
+                }
+                combination[j] = lines[next++];
+            }
+            return combination;
+        }
+    }
+}
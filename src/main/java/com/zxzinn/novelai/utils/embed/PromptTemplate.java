@@ -0,0 +1,99 @@
+package com.zxzinn.novelai.utils.embed;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+// 提示詞解析後的結構：文字片段與嵌入標籤交錯，取樣與括號範圍在解析時就轉成整數
+public final class PromptTemplate {
+    private final List<Node> nodes;
+
+    private PromptTemplate(List<Node> nodes) {
+        this.nodes = List.copyOf(nodes);
+    }
+
+    @NotNull
+    public static PromptTemplate compile(String prompt, @NotNull EmbedDetector embedDetector) {
+        List<Node> nodes = new ArrayList<>();
+        if (prompt == null || prompt.isEmpty()) {
+            return new PromptTemplate(nodes);
+        }
+        if (prompt.indexOf('<') < 0) {
+            nodes.add(new Literal(prompt));
+            return new PromptTemplate(nodes);
+        }
+
+        int position = 0;
+        for (EmbedDetector.EmbedTag tag : embedDetector.detectEmbeds(prompt)) {
+            if (tag.start() > position) {
+                nodes.add(new Literal(prompt.substring(position, tag.start())));
+            }
+            nodes.add(new Embed(tag.name(), IntRange.parse(tag.sampling(), false), IntRange.parse(tag.bracketing(), true),
+                    prompt.substring(tag.start(), tag.end())));
+            position = tag.end();
+        }
+        if (position < prompt.length()) {
+            nodes.add(new Literal(prompt.substring(position)));
+        }
+        return new PromptTemplate(nodes);
+    }
+
+    public List<Node> nodes() {
+        return nodes;
+    }
+
+    public boolean hasEmbeds() {
+        return nodes.stream().anyMatch(Embed.class::isInstance);
+    }
+
+    public sealed interface Node permits Literal, Embed {
+    }
+
+    public record Literal(String text) implements Node {
+    }
+
+    // sampling 為 null 表示使用檔案中全部標籤，bracketing 為 null 表示不加括號；source 為原始的 <...> 文字
+    public record Embed(String name, IntRange sampling, IntRange bracketing, String source) implements Node {
+    }
+
+    public record IntRange(int min, int max) {
+
+        public int pick(RandomGenerator random) {
+            return min == max ? min : random.nextInt(max - min + 1) + min;
+        }
+
+        // 接受 "n" 或 "min~max"，格式不符時回傳 null
+        public static IntRange parse(String spec, boolean allowNegative) {
+            if (spec == null || spec.isEmpty()) {
+                return null;
+            }
+            int separator = spec.indexOf('~');
+            try {
+                if (separator < 0) {
+                    int value = parseBound(spec, allowNegative);
+                    return new IntRange(value, value);
+                }
+                int first = parseBound(spec.substring(0, separator), allowNegative);
+                int second = parseBound(spec.substring(separator + 1), allowNegative);
+                return new IntRange(Math.min(first, second), Math.max(first, second));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static int parseBound(String text, boolean allowNegative) {
+            int digitsStart = allowNegative && text.startsWith("-") ? 1 : 0;
+            if (text.length() == digitsStart) {
+                throw new NumberFormatException(text);
+            }
+            for (int i = digitsStart; i < text.length(); i++) {
+                if (!Character.isDigit(text.charAt(i))) {
+                    throw new NumberFormatException(text);
+                }
+            }
+            return Integer.parseInt(text);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.zxzinn.novelai.utils.embed;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+// 從嵌入檔案抽取不重複的標籤索引；有權重時以別名表 (Vose alias method) 做 O(1) 抽樣
+public final class TagSampler {
+    private static final int[] EMPTY = new int[0];
+    // 拒絕重抽的次數上限，超過時改用加權蓄水池抽樣，避免權重極度集中時一直抽到重複項
+    private static final int REJECTION_ATTEMPTS_PER_PICK = 4;
+    private static final int MIN_REJECTION_ATTEMPTS = 16;
+
+    private final int size;
+    private final double[] weights;
+    private final double[] probability;
+    private final int[] alias;
+    private final int positiveCount;
+
+    private TagSampler(int size, double[] weights, double[] probability, int[] alias, int positiveCount) {
+        this.size = size;
+        this.weights = weights;
+        this.probability = probability;
+        this.alias = alias;
+        this.positiveCount = positiveCount;
+    }
+
+    public static TagSampler uniform(int size) {
+        return new TagSampler(size, null, null, null, size);
+    }
+
+    public static TagSampler weighted(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        int positiveCount = 0;
+        for (double weight : weights) {
+            if (weight > 0) {
+                total += weight;
+                positiveCount++;
+            }
+        }
+        if (positiveCount == 0) {
+            return new TagSampler(n, weights.clone(), null, null, 0);
+        }
+
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = Math.max(0, weights[i]) * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // 浮點誤差留下的項目機率視為 1
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1.0;
+        }
+        // 權重為 0 的項目可能因浮點誤差留在 small 而被設為 1，強制改回 0 並把該欄交給權重最大的項目
+        int heaviest = 0;
+        for (int i = 1; i < n; i++) {
+            if (weights[i] > weights[heaviest]) {
+                heaviest = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (!(weights[i] > 0)) {
+                probability[i] = 0;
+                if (!(weights[alias[i]] > 0)) {
+                    alias[i] = heaviest;
+                }
+            }
+        }
+        return new TagSampler(n, weights.clone(), probability, alias, positiveCount);
+    }
+
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 權重為 0 或負數的項目永遠不會被抽中
+    public double weight(int index) {
+        return weights == null ? 1.0 : Math.max(0, weights[index]);
+    }
+
+    // 可被抽中的所有項目，依原順序；未指定取樣數時使用，與抽樣同樣排除權重為 0 的項目
+    public int[] selectable() {
+        int[] result = new int[positiveCount];
+        int found = 0;
+        for (int i = 0; i < size && found < positiveCount; i++) {
+            if (weight(i) > 0) {
+                result[found++] = i;
+            }
+        }
+        return result;
+    }
+
+    public int[] sample(int count, RandomGenerator random) {
+        int picks = Math.min(count, positiveCount);
+        if (picks <= 0) {
+            return EMPTY;
+        }
+        if (weights == null) {
+            return partialFisherYates(picks, random);
+        }
+        if (picks == 1) {
+            return new int[]{drawAlias(random)};
+        }
+        int[] result = sampleByRejection(picks, random);
+        return result != null ? result : weightedReservoir(picks, random);
+    }
+
+    private int drawAlias(RandomGenerator random) {
+        int column = random.nextInt(size);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+    // 只記錄被交換過的位置，抽 k 個只需 O(k) 時間與空間
+    private int[] partialFisherYates(int count, RandomGenerator random) {
+        int[] result = new int[count];
+        Map<Integer, Integer> swapped = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(size - i);
+            result[i] = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(i, i));
+        }
+        return result;
+    }
+
+    private int[] sampleByRejection(int count, RandomGenerator random) {
+        int[] result = new int[count];
+        Set<Integer> chosen = new HashSet<>(count * 2);
+        int found = 0;
+        int attempts = Math.max(MIN_REJECTION_ATTEMPTS, count * REJECTION_ATTEMPTS_PER_PICK);
+        while (found < count && attempts-- > 0) {
+            int index = drawAlias(random);
+            if (chosen.add(index)) {
+                result[found++] = index;
+            }
+        }
+        return found == count ? result : null;
+    }
+
+    // Efraimidis–Spirakis：每項取 log(u)/w 為鍵，保留鍵值最大的 k 項
+    private int[] weightedReservoir(int count, RandomGenerator random) {
+        PriorityQueue<double[]> heap = new PriorityQueue<>(count, (a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < size; i++) {
+            if (weights[i] <= 0) {
+                continue;
+            }
+            double key = Math.log(1.0 - random.nextDouble()) / weights[i];
+            if (heap.size() < count) {
+                heap.add(new double[]{key, i});
+            } else if (key > heap.peek()[0]) {
+                heap.poll();
+                heap.add(new double[]{key, i});
+            }
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = (int) heap.poll()[1];
+        }
+        return result;
+    }
+}
@@ -7,6 +7,7 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -18,6 +19,7 @@ import java.util.Optional;
 @Log4j2
 public class ImageUtils {
     private static final String FILE_NAME_FORMAT = "NovelAI_FX_generated_%s.png";
+    private static final String DUPLICATE_FILE_NAME_FORMAT = "NovelAI_FX_generated_%s_%d.png";
     private static final DateTimeFormatter FILE_NAME_TIMESTAMP_FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
@@ -44,8 +46,7 @@ public class ImageUtils {
 
     public static Optional<File> saveImage(byte[] imageData, String outputDir) {
         try {
-            Path outputPath = ensureOutputDirectoryExists(outputDir);
-            File outputFile = createOutputFile(outputPath);
+            File outputFile = createOutputFile(outputDir);
             writeImageDataToFile(imageData, outputFile);
             return Optional.of(outputFile);
         } catch (IOException e) {
@@ -54,22 +55,28 @@ public class ImageUtils {
         }
     }
 
+    public static File createOutputFile(String outputDir) throws IOException {
+        Path outputPath = ensureOutputDirectoryExists(outputDir);
+        String timeStamp = LocalDateTime.now().format(FILE_NAME_TIMESTAMP_FORMATTER);
+        // 同一秒內可能有多張圖像完成，以原子方式建立檔案避免互相覆寫
+        for (int index = 0; ; index++) {
+            String fileName = index == 0
+                    ? String.format(FILE_NAME_FORMAT, timeStamp)
+                    : String.format(DUPLICATE_FILE_NAME_FORMAT, timeStamp, index);
+            try {
+                return Files.createFile(outputPath.resolve(fileName)).toFile();
+            } catch (FileAlreadyExistsException e) {
+                log.debug("檔案已存在，嘗試下一個檔名: {}", fileName);
+            }
+        }
+    }
+
     private static Path ensureOutputDirectoryExists(String outputDir) throws IOException {
         Path outputPath = Paths.get(outputDir);
         Files.createDirectories(outputPath);
         return outputPath;
     }
 
-    private static File createOutputFile(Path outputPath) {
-        String fileName = generateFileName();
-        return outputPath.resolve(fileName).toFile();
-    }
-
-    private static String generateFileName() {
-        String timeStamp = LocalDateTime.now().format(FILE_NAME_TIMESTAMP_FORMATTER);
-        return String.format(FILE_NAME_FORMAT, timeStamp);
-    }
-
     private static void writeImageDataToFile(byte[] imageData, File outputFile) throws IOException {
         Files.write(outputFile.toPath(), imageData);
     }
@@ -0,0 +1,130 @@
+package com.zxzinn.novelai.utils.image;
+
+import com.zxzinn.novelai.model.GeneratedImage;
+import com.zxzinn.novelai.model.GenerationTiming;
+import com.zxzinn.novelai.model.GenerationTiming.Phase;
+import com.zxzinn.novelai.utils.common.TimedInputStream;
+import com.zxzinn.novelai.utils.common.TimedOutputStream;
+import javafx.scene.image.Image;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+@Log4j2
+public final class ImageZipExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ImageZipExtractor() {}
+
+    @NotNull
+    public static List<GeneratedImage> extractImages(@NotNull InputStream zipStream, String outputDir) throws IOException {
+        return extractImages(zipStream, outputDir, null);
+    }
+
+    @NotNull
+    public static List<GeneratedImage> extractImages(@NotNull InputStream zipStream, String outputDir,
+                                                     Consumer<GeneratedImage> onImageExtracted) throws IOException {
+        return extractImages(zipStream, outputDir, onImageExtracted, new GenerationTiming(), new Delivery());
+    }
+
+    // 逐一讀取壓縮檔中的每張圖像，每讀完一張就回呼一次，不必等整個壓縮檔下載完成。
+    // 同一個 delivery 跨重試共用：相同種子重新送出會得到相同的壓縮檔，已交付的項目直接略過，不再寫檔、解碼或回呼
+    @NotNull
+    public static List<GeneratedImage> extractImages(@NotNull InputStream zipStream, String outputDir,
+                                                     Consumer<GeneratedImage> onImageExtracted,
+                                                     @NotNull GenerationTiming timing,
+                                                     @NotNull Delivery delivery) throws IOException {
+        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(zipStream, BUFFER_SIZE));
+        // 串流層層包裝，各階段時間以差值計算：解壓 = 讀取 ZIP 的時間 - 其中等待網路的時間
+        long downloadNanosBefore = timing.getNanos(Phase.DOWNLOAD);
+        long zipReadNanos = 0;
+        int index = 0;
+
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                ZipEntry entry = zis.getNextEntry();
+                zipReadNanos += System.nanoTime() - start;
+                if (entry == null) {
+                    break;
+                }
+                if (entry.isDirectory() || delivery.isDelivered(index++)) {
+                    continue;
+                }
+                TimedInputStream entryStream = new TimedInputStream(CloseShieldInputStream.wrap(zis));
+                GeneratedImage generatedImage = extractEntry(entryStream, entry, outputDir, timing);
+                zipReadNanos += entryStream.getElapsedNanos();
+                delivery.add(generatedImage);
+                if (onImageExtracted != null) {
+                    onImageExtracted.accept(generatedImage);
+                }
+            }
+        } finally {
+            timing.add(Phase.UNZIP, zipReadNanos - (timing.getNanos(Phase.DOWNLOAD) - downloadNanosBefore));
+        }
+
+        List<GeneratedImage> images = delivery.images();
+        if (images.isEmpty()) {
+            throw new IOException("ZIP file is empty");
+        }
+        log.info("已從回應中解壓 {} 張圖像", images.size());
+        return images;
+    }
+
+    // 一個生成任務已交付的圖像，依壓縮檔中的順序排列
+    public static final class Delivery {
+        private final List<GeneratedImage> images = new ArrayList<>();
+
+        synchronized boolean isDelivered(int index) {
+            return index < images.size();
+        }
+
+        synchronized void add(GeneratedImage image) {
+            images.add(image);
+        }
+
+        @NotNull
+        public synchronized List<GeneratedImage> images() {
+            return List.copyOf(images);
+        }
+    }
+
+    // PNG 位元組在同一趟讀取中同時寫入檔案與解碼器；解碼在下載執行緒上完成，
+    // 收到圖像的預覽與歷史紀錄會立即讀取像素，延後解碼只會把工作移到 JavaFX 執行緒上。
+    // 讀取失敗時只有這個項目的檔案未完成，刪除後由重試從這個項目繼續
+    @NotNull
+    private static GeneratedImage extractEntry(InputStream entryStream, ZipEntry entry, String outputDir,
+                                               GenerationTiming timing) throws IOException {
+        long createStart = System.nanoTime();
+        File outputFile = ImageUtils.createOutputFile(outputDir);
+        timing.add(Phase.DISK_WRITE, System.nanoTime() - createStart);
+
+        try (OutputStream fileOut = new BufferedOutputStream(new TimedOutputStream(Files.newOutputStream(outputFile.toPath()),
+                nanos -> timing.add(Phase.DISK_WRITE, nanos)), BUFFER_SIZE);
+             TimedInputStream tee = new TimedInputStream(new TeeInputStream(entryStream, fileOut, false))) {
+            long decodeStart = System.nanoTime();
+            Image image = new Image(tee);
+            // 解碼時間扣除解碼器等待讀取（解壓與寫檔）的時間
+            timing.add(Phase.DECODE, System.nanoTime() - decodeStart - tee.getElapsedNanos());
+            // 解碼器可能不會讀到 PNG 結尾，將剩餘位元組寫完以確保檔案完整
+            tee.transferTo(OutputStream.nullOutputStream());
+            if (image.isError()) {
+                log.warn("圖像解碼失敗，檔案仍已保存: {}", outputFile.getAbsolutePath(), image.getException());
+            }
+            log.info("已串流解壓圖像 {} 至 {}", entry.getName(), outputFile.getAbsolutePath());
+            return new GeneratedImage(image, outputFile);
+        } catch (IOException e) {
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.zxzinn.novelai.utils.strategy;
+
+import com.zxzinn.novelai.api.APIException;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Log4j2
+public class RateLimitAwareRetry implements RetryStrategy {
+    private static final int MAX_RETRIES = 5;
+    private static final int MAX_RATE_LIMIT_RETRIES = 10;
+    private static final long BASE_DELAY_MS = 2_000;
+    private static final long RATE_LIMIT_BASE_DELAY_MS = 5_000;
+    private static final long MAX_DELAY_MS = 120_000;
+    private static final long RETRY_AFTER_JITTER_MS = 1_000;
+    private static final long NO_RETRY = -1;
+
+    private final ScheduledExecutorService scheduler;
+    // 任一請求收到 429 後，共用此策略的所有請求都會等到冷卻結束再送出
+    private final AtomicLong rateLimitedUntil;
+
+    public RateLimitAwareRetry() {
+        this(ExecutorProvider.getInstance().getScheduler());
+    }
+
+    public RateLimitAwareRetry(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.rateLimitedUntil = new AtomicLong();
+    }
+
+    @Override
+    public <T> Optional<T> execute(ThrowingSupplier<T> supplier) {
+        RetryState state = new RetryState();
+        while (true) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(remainingRateLimitMillis());
+                return Optional.of(supplier.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            } catch (Exception e) {
+                long delayMs = computeRetryDelay(e, state);
+                if (delayMs == NO_RETRY) {
+                    log.error("操作失敗，不再重試", e);
+                    return Optional.empty();
+                }
+                log.warn("操作失敗，將在{}毫秒後重試. 錯誤: {}", delayMs, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return Optional.empty();
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> attempt, RetryListener listener) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        new AsyncRetry<>(attempt, listener, result).scheduleAttempt(remainingRateLimitMillis());
+        return result;
+    }
+
+    private long remainingRateLimitMillis() {
+        return Math.max(0, rateLimitedUntil.get() - System.currentTimeMillis());
+    }
+
+    private long computeRetryDelay(Throwable failure, RetryState state) {
+        Throwable cause = unwrap(failure);
+        switch (classify(cause)) {
+            case RATE_LIMITED -> {
+                if (++state.rateLimitRetries > MAX_RATE_LIMIT_RETRIES) {
+                    return NO_RETRY;
+                }
+                // Retry-After 會套用到所有請求，過大或異常的值一律截在 MAX_DELAY_MS
+                Optional<Duration> retryAfter = ((APIException) cause).getRetryAfter();
+                long delayMs = retryAfter
+                        .map(duration -> Math.min(MAX_DELAY_MS, cappedMillis(duration)
+                                + ThreadLocalRandom.current().nextLong(RETRY_AFTER_JITTER_MS + 1)))
+                        .orElseGet(() -> jitteredBackoff(RATE_LIMIT_BASE_DELAY_MS, state.rateLimitRetries));
+                long retryAt = System.currentTimeMillis() + delayMs;
+                rateLimitedUntil.accumulateAndGet(retryAt, Math::max);
+                return delayMs;
+            }
+            case TRANSIENT -> {
+                if (++state.transientRetries > MAX_RETRIES) {
+                    return NO_RETRY;
+                }
+                return jitteredBackoff(BASE_DELAY_MS, state.transientRetries);
+            }
+            default -> {
+                return NO_RETRY;
+            }
+        }
+    }
+
+    private static long cappedMillis(Duration duration) {
+        return duration.compareTo(Duration.ofMillis(MAX_DELAY_MS)) > 0 ? MAX_DELAY_MS : duration.toMillis();
+    }
+
+    // 指數退避上限的一半固定，另一半隨機，避免多個請求同時重試
+    private long jitteredBackoff(long baseDelayMs, int retry) {
+        long cap = Math.min(MAX_DELAY_MS, baseDelayMs << Math.min(retry - 1, 16));
+        long half = cap / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private FailureType classify(Throwable cause) {
+        if (cause instanceof APIException apiException) {
+            int status = apiException.getStatusCode();
+            if (apiException.isRateLimited()) {
+                return FailureType.RATE_LIMITED;
+            }
+            if (status == 408 || status >= 500) {
+                return FailureType.TRANSIENT;
+            }
+            return FailureType.FATAL;
+        }
+        if (cause instanceof CancellationException) {
+            return FailureType.FATAL;
+        }
+        if (cause instanceof IOException) {
+            return FailureType.TRANSIENT;
+        }
+        return FailureType.FATAL;
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException
+                || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private enum FailureType {
+        TRANSIENT, RATE_LIMITED, FATAL
+    }
+
+    private static class RetryState {
+        private int transientRetries;
+        private int rateLimitRetries;
+
+        private int totalRetries() {
+            return transientRetries + rateLimitRetries;
+        }
+    }
+
+    private class AsyncRetry<T> {
+        private final Supplier<CompletableFuture<T>> attempt;
+        private final RetryListener listener;
+        private final CompletableFuture<T> result;
+        private final RetryState state;
+        private volatile CompletableFuture<T> currentAttempt;
+
+        private AsyncRetry(Supplier<CompletableFuture<T>> attempt, RetryListener listener, CompletableFuture<T> result) {
+            this.attempt = attempt;
+            this.listener = listener;
+            this.result = result;
+            this.state = new RetryState();
+            result.whenComplete((value, failure) -> {
+                CompletableFuture<T> running = currentAttempt;
+                if (result.isCancelled() && running != null) {
+                    running.cancel(true);
+                }
+            });
+        }
+
+        private void scheduleAttempt(long delayMs) {
+            if (result.isDone()) {
+                return;
+            }
+            if (delayMs <= 0) {
+                runAttempt();
+            } else {
+                scheduler.schedule(this::runAttempt, delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void runAttempt() {
+            if (result.isDone()) {
+                return;
+            }
+            long rateLimitWait = remainingRateLimitMillis();
+            if (rateLimitWait > 0) {
+                scheduler.schedule(this::runAttempt, rateLimitWait, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            CompletableFuture<T> attemptFuture;
+            try {
+                attemptFuture = attempt.get();
+            } catch (Exception e) {
+                attemptFuture = CompletableFuture.failedFuture(e);
+            }
+            currentAttempt = attemptFuture;
+            if (result.isCancelled()) {
+                attemptFuture.cancel(true);
+                return;
+            }
+
+            attemptFuture.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    result.complete(value);
+                    return;
+                }
+                if (result.isDone()) {
+                    return;
+                }
+                Throwable cause = unwrap(failure);
+                long delayMs = computeRetryDelay(cause, state);
+                if (delayMs == NO_RETRY) {
+                    log.error("操作失敗，不再重試: {}", cause.getMessage());
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                log.warn("操作失敗，將在{}毫秒後重試. 錯誤: {}", delayMs, cause.getMessage());
+                if (listener != null) {
+                    listener.onRetry(state.totalRetries(), delayMs, cause);
+                }
+                scheduleAttempt(delayMs);
+            });
+        }
+    }
+}
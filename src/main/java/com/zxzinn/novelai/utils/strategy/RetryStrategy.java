@@ -1,12 +1,31 @@
 package com.zxzinn.novelai.utils.strategy;
 
+import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 public interface RetryStrategy {
     <T> Optional<T> execute(ThrowingSupplier<T> supplier);
 
+    default <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> attempt) {
+        return executeAsync(attempt, null);
+    }
+
+    // 預設實作沿用同步重試，等待期間會佔用一條執行緒
+    default <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> attempt, RetryListener listener) {
+        return CompletableFuture.supplyAsync(() -> execute(() -> attempt.get().join())
+                .orElseThrow(() -> new CompletionException(new IOException("操作失敗，已達到最大重試次數"))));
+    }
+
     @FunctionalInterface
     interface ThrowingSupplier<T> {
         T get() throws Exception;
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    interface RetryListener {
+        void onRetry(int retryCount, long delayMillis, Throwable cause);
+    }
+}
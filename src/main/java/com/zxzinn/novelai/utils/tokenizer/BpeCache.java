@@ -0,0 +1,100 @@
+package com.zxzinn.novelai.utils.tokenizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// 所有分詞器共用的 BPE 結果快取：依雜湊分成數個各自上鎖的 LRU 區段，不同執行緒查詢不同區段時不會互相等待
+public class BpeCache {
+    private static final int MAX_ENTRIES = 32768;
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class LazyHolder {
+        static final BpeCache INSTANCE = new BpeCache(MAX_ENTRIES);
+    }
+
+    public static BpeCache getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    public BpeCache(int maxEntries) {
+        int perSegment = Math.max(1, maxEntries / SEGMENT_COUNT);
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    // 計算在鎖外進行，同一個 token 同時未命中時可能各算一次，但結果相同
+    int[] get(String token, Function<String, int[]> compute) {
+        Segment segment = segmentFor(token);
+        int[] ids;
+        synchronized (segment) {
+            ids = segment.entries.get(token);
+        }
+        if (ids != null) {
+            hits.increment();
+            return ids;
+        }
+        misses.increment();
+        ids = compute.apply(token);
+        synchronized (segment) {
+            segment.entries.put(token, ids);
+        }
+        return ids;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private Segment segmentFor(String token) {
+        int hash = token.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+    }
+
+    public record Statistics(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    // 以區段本身作為鎖，entries 只能在同步區塊內存取
+    private final class Segment {
+        private final Map<String, int[]> entries;
+
+        private Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
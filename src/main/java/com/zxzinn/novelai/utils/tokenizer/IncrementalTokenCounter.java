@@ -0,0 +1,76 @@
+package com.zxzinn.novelai.utils.tokenizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 在逗號處把提示詞切成片段並記住每段的 token 數，下次只重新計算內容有變的片段。
+// 只在逗號後面不是符號字元時切開，這些位置不會落在分詞規則的任何一個比對結果中間，分段計數的總和與整段計數完全相同。
+// 同一個實例不可由多個執行緒同時使用
+public class IncrementalTokenCounter {
+    private final SimpleTokenizer tokenizer;
+    private Map<String, Integer> previousCounts;
+    private String previousText;
+    private int previousTotal;
+
+    IncrementalTokenCounter(SimpleTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        this.previousCounts = Map.of();
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.equals(previousText)) {
+            return previousTotal;
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        int total = 0;
+        int segmentStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == ',' && (i + 1 == text.length() || !isSymbolChar(text.charAt(i + 1)))) {
+                total += countSegment(text.substring(segmentStart, i + 1), counts);
+                segmentStart = i + 1;
+            }
+        }
+        if (segmentStart < text.length()) {
+            total += countSegment(text.substring(segmentStart), counts);
+        }
+
+        previousCounts = counts;
+        previousText = text;
+        previousTotal = total;
+        return total;
+    }
+
+    private int countSegment(String segment, Map<String, Integer> counts) {
+        Integer count = counts.get(segment);
+        if (count == null) {
+            count = previousCounts.get(segment);
+            if (count == null) {
+                count = tokenizer.countTokens(segment);
+            }
+            counts.put(segment, count);
+        }
+        return count;
+    }
+
+    // 對應分詞規則中 [^\s\p{L}\p{N}{}\[\]\n]+ 的字元；代理字元一律視為符號，寧可少切也不切錯
+    private static boolean isSymbolChar(char c) {
+        switch (c) {
+            case ' ', '\t', '\n', '\u000B', '\f', '\r', '{', '}', '[', ']' -> {
+                return false;
+            }
+            default -> {
+                if (Character.isLetter(c)) {
+                    return false;
+                }
+                int type = Character.getType(c);
+                return type != Character.DECIMAL_DIGIT_NUMBER
+                        && type != Character.LETTER_NUMBER
+                        && type != Character.OTHER_NUMBER;
+            }
+        }
+    }
+}
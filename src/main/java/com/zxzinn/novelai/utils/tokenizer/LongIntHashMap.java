@@ -0,0 +1,82 @@
+package com.zxzinn.novelai.utils.tokenizer;
+
+import java.util.Arrays;
+
+// long 對 int 的開放定址雜湊表，避免 Map<Long, Integer> 的裝箱與節點配置；鍵不可為 -1
+final class LongIntHashMap {
+    private static final long EMPTY_KEY = -1L;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    // 由快照還原，陣列直接沿用不再重新雜湊
+    LongIntHashMap(long[] keys, int[] values, int size) {
+        if (keys.length != values.length || Integer.bitCount(keys.length) != 1) {
+            throw new IllegalArgumentException("雜湊表容量必須為 2 的次方且鍵值長度相同");
+        }
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    // 只在建表時呼叫，容量固定為預期大小的兩倍以上，不需要擴容
+    void put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("key 不可為 -1");
+        }
+        int slot = slot(key);
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > keys.length / 2) {
+            throw new IllegalStateException("LongIntHashMap 已超過預期大小");
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    int get(long key, int defaultValue) {
+        int slot = slot(key);
+        long current;
+        while ((current = keys[slot]) != EMPTY_KEY) {
+            if (current == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] keys() {
+        return keys;
+    }
+
+    int[] values() {
+        return values;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
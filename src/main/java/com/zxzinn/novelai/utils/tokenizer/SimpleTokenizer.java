@@ -1,62 +1,128 @@
 package com.zxzinn.novelai.utils.tokenizer;
 
-import com.google.inject.Inject;
+import com.zxzinn.novelai.utils.common.CommonPaths;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
+import com.zxzinn.novelai.utils.common.ResourcePaths;
+import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import java.util.zip.GZIPInputStream;
 
+// CLIP 的 BPE 分詞器。符號一律以整數 ID 表示：位元組 b 為 b，位於字尾的位元組為 256 + b，第 i 條合併規則產生 512 + i；
+// 相鄰符號對的合併順位存在以 (左 ID << 32 | 右 ID) 為鍵的 LongIntHashMap，合併過程只在可重用的 int 陣列中進行。
+// 全程式共用一個實例，首次啟動從 classpath 的詞表建立並寫出快照，之後直接映射快照檔
+@Log4j2
 public class SimpleTokenizer {
     private static final int VOCAB_SIZE = 49152 - 256 - 2 + 1;
     private static final String START_OF_TEXT = "<|startoftext|>";
     private static final String END_OF_TEXT = "<|endoftext|>";
     private static final String END_OF_WORD = "</w>";
+    private static final int BYTE_SYMBOLS = 256;
+    private static final int FIRST_MERGED_ID = 2 * BYTE_SYMBOLS;
+    private static final int NO_RANK = Integer.MAX_VALUE;
 
-    private final Map<Integer, String> byteEncoder;
-    private final Map<String, Integer> encoder;
-    private final Map<String, Integer> bpeRanks;
-    private final Map<String, String> cache;
+    private final LongIntHashMap mergeRanks;
+    private final int mergeCount;
+    private final int startOfTextId;
+    private final int endOfTextId;
+    private final BpeCache cache;
     private final Pattern pattern;
+    private final ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[64]);
 
-    @Inject
-    public SimpleTokenizer(String bpePath) throws IOException {
-        this.byteEncoder = bytesToUnicode();
-        List<String[]> merges = readMerges(bpePath);
-        this.encoder = buildEncoder(merges);
-        this.bpeRanks = buildBpeRanks(merges);
-        this.cache = new HashMap<>();
+    private static class LazyHolder {
+        static final SimpleTokenizer INSTANCE = load(
+                Paths.get(CommonPaths.APP_DATA_DIRECTORY, CommonPaths.TOKENIZER_SNAPSHOT_FILE), BpeCache.getInstance());
+    }
+
+    public static SimpleTokenizer getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    public SimpleTokenizer(InputStream gzippedMerges, BpeCache cache) throws IOException {
+        this(readVocabulary(gzippedMerges), cache);
+    }
+
+    private SimpleTokenizer(TokenizerSnapshot.Vocabulary vocabulary, BpeCache cache) {
+        this.mergeRanks = vocabulary.mergeRanks();
+        this.mergeCount = vocabulary.mergeCount();
+        this.startOfTextId = FIRST_MERGED_ID + mergeCount;
+        this.endOfTextId = startOfTextId + 1;
+        this.cache = cache;
         this.pattern = compilePattern();
     }
 
+    // 壓縮詞表只讀原始位元組計算雜湊，快照可用時不需要解壓
+    private static SimpleTokenizer load(Path snapshotFile, BpeCache cache) {
+        long start = System.nanoTime();
+        byte[] source;
+        try (InputStream inputStream = SimpleTokenizer.class.getResourceAsStream(ResourcePaths.SIMPLE_TOKENIZER)) {
+            if (inputStream == null) {
+                throw new IOException("Cannot find resource: " + ResourcePaths.SIMPLE_TOKENIZER);
+            }
+            source = inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize tokenizer", e);
+        }
+        byte[] sourceDigest = TokenizerSnapshot.digest(source);
+        TokenizerSnapshot.Vocabulary vocabulary = TokenizerSnapshot.read(snapshotFile, sourceDigest).orElse(null);
+        boolean fromSnapshot = vocabulary != null;
+        if (!fromSnapshot) {
+            try {
+                vocabulary = readVocabulary(new ByteArrayInputStream(source));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to initialize tokenizer", e);
+            }
+            writeSnapshotAsync(snapshotFile, vocabulary, sourceDigest);
+        }
+        log.info("分詞器載入完成 ({}，{} ms)", fromSnapshot ? "快照" : "詞表",
+                (System.nanoTime() - start) / 1_000_000);
+        return new SimpleTokenizer(vocabulary, cache);
+    }
+
+    private static void writeSnapshotAsync(Path snapshotFile, TokenizerSnapshot.Vocabulary vocabulary,
+                                           byte[] sourceDigest) {
+        ExecutorProvider.getInstance().getIoExecutor().execute(() -> {
+            try {
+                TokenizerSnapshot.write(snapshotFile, vocabulary, sourceDigest);
+                log.info("已寫出分詞器快照: {}", snapshotFile.toAbsolutePath());
+            } catch (IOException e) {
+                log.warn("無法寫出分詞器快照: {}", e.getMessage());
+            }
+        });
+    }
+
+    private static TokenizerSnapshot.Vocabulary readVocabulary(InputStream gzippedMerges) throws IOException {
+        List<String[]> merges = readMerges(gzippedMerges);
+        return new TokenizerSnapshot.Vocabulary(buildMergeRanks(merges, buildSymbolIds()), merges.size());
+    }
+
+    // 與 GPT-2 相同的位元組對 Unicode 字元對照，只在載入合併規則時用來把字串轉成符號 ID
     @NotNull
-    private Map<Integer, String> bytesToUnicode() {
-        List<Integer> bs = new ArrayList<>();
-        IntStream.rangeClosed('!', '~').forEach(bs::add);
-        IntStream.rangeClosed('¡', '¬').forEach(bs::add);
-        IntStream.rangeClosed('®', 'ÿ').forEach(bs::add);
+    private static char[] bytesToUnicode() {
+        char[] table = new char[BYTE_SYMBOLS];
+        boolean[] printable = new boolean[BYTE_SYMBOLS];
+        for (int b = '!'; b <= '~'; b++) printable[b] = true;
+        for (int b = '¡'; b <= '¬'; b++) printable[b] = true;
+        for (int b = '®'; b <= 'ÿ'; b++) printable[b] = true;
 
-        List<Integer> cs = new ArrayList<>(bs);
         int n = 0;
-        for (int b = 0; b < 256; b++) {
-            if (!bs.contains(b)) {
-                bs.add(b);
-                cs.add(256 + n++);
-            }
+        for (int b = 0; b < BYTE_SYMBOLS; b++) {
+            table[b] = printable[b] ? (char) b : (char) (BYTE_SYMBOLS + n++);
         }
-
-        return IntStream.range(0, bs.size()).boxed()
-                .collect(Collectors.toMap(bs::get, i -> String.valueOf((char) cs.get(i).intValue())));
+        return table;
     }
 
     @NotNull
-    private List<String[]> readMerges(String path) throws IOException {
-        List<String[]> merges = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path)), StandardCharsets.UTF_8))) {
+    private static List<String[]> readMerges(InputStream gzippedMerges) throws IOException {
+        List<String[]> merges = new ArrayList<>(VOCAB_SIZE);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(gzippedMerges, 64 * 1024), StandardCharsets.UTF_8))) {
             reader.readLine(); // Skip first line
             String line;
             while ((line = reader.readLine()) != null && merges.size() < VOCAB_SIZE) {
@@ -66,93 +132,127 @@ public class SimpleTokenizer {
         return merges;
     }
 
-    private Map<String, Integer> buildEncoder(List<String[]> merges) {
-        List<String> vocab = new ArrayList<>(byteEncoder.values());
-        vocab.addAll(vocab.stream().map(v -> v + END_OF_WORD).toList());
-        merges.forEach(merge -> vocab.add(String.join("", merge)));
-        vocab.add(START_OF_TEXT);
-        vocab.add(END_OF_TEXT);
+    private static Map<String, Integer> buildSymbolIds() {
+        char[] byteEncoder = bytesToUnicode();
+        Map<String, Integer> symbolIds = new HashMap<>(VOCAB_SIZE * 2);
+        for (int b = 0; b < BYTE_SYMBOLS; b++) {
+            String symbol = String.valueOf(byteEncoder[b]);
+            symbolIds.put(symbol, b);
+            symbolIds.put(symbol + END_OF_WORD, BYTE_SYMBOLS + b);
+        }
+        return symbolIds;
+    }
 
-        return IntStream.range(0, vocab.size()).boxed()
-                .collect(Collectors.toMap(vocab::get, i -> i));
+    // 合併結果的 ID 依規則順序指定，因此順位 rank 的合併產生 FIRST_MERGED_ID + rank
+    private static LongIntHashMap buildMergeRanks(List<String[]> merges, Map<String, Integer> symbolIds) {
+        LongIntHashMap ranks = new LongIntHashMap(merges.size());
+        for (int rank = 0; rank < merges.size(); rank++) {
+            String[] merge = merges.get(rank);
+            Integer left = symbolIds.get(merge[0]);
+            Integer right = symbolIds.get(merge[1]);
+            if (left != null && right != null) {
+                ranks.put(pairKey(left, right), rank);
+            }
+            symbolIds.putIfAbsent(merge[0] + merge[1], FIRST_MERGED_ID + rank);
+        }
+        return ranks;
     }
 
-    private Map<String, Integer> buildBpeRanks(List<String[]> merges) {
-        return IntStream.range(0, merges.size()).boxed()
-                .collect(Collectors.toMap(i -> String.join("", merges.get(i)), i -> i));
+    private static long pairKey(int left, int right) {
+        return ((long) left << 32) | right;
     }
 
     private Pattern compilePattern() {
         return Pattern.compile(START_OF_TEXT + "|" + END_OF_TEXT + "|'s|'t|'re|'ve|'m|'ll|'d|[\\p{L}]+|[\\p{N}]|[^\\s\\p{L}\\p{N}{}\\[\\]\n]+", Pattern.CASE_INSENSITIVE);
     }
 
-    private String bpe(String token) {
-        return cache.computeIfAbsent(token, this::computeBpe);
+    // 快取中的陣列會被多個分詞器共用，取得後只能讀取
+    private int[] bpe(String token) {
+        return cache.get(token, this::computeBpe);
+    }
+
+    public BpeCache.Statistics getCacheStatistics() {
+        return cache.getStatistics();
     }
 
-    private String computeBpe(String token) {
-        List<String> word = new ArrayList<>(Arrays.asList(token.split("")));
-        word.set(word.size() - 1, word.get(word.size() - 1) + END_OF_WORD);
+    // 每輪找出順位最小的相鄰符號對，將所有出現處就地合併，直到沒有可合併的符號對
+    private int[] computeBpe(String token) {
+        byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        int[] symbols = scratch.get();
+        if (symbols.length < length) {
+            symbols = new int[Math.max(length, symbols.length * 2)];
+            scratch.set(symbols);
+        }
+        for (int i = 0; i < length; i++) {
+            symbols[i] = bytes[i] & 0xFF;
+        }
+        symbols[length - 1] += BYTE_SYMBOLS;
 
-        while (word.size() > 1) {
-            int minRank = Integer.MAX_VALUE;
-            String bestPair = null;
-            for (int i = 0; i < word.size() - 1; i++) {
-                String pair = word.get(i) + word.get(i + 1);
-                int rank = bpeRanks.getOrDefault(pair, Integer.MAX_VALUE);
-                if (rank < minRank) {
-                    minRank = rank;
-                    bestPair = pair;
+        while (length > 1) {
+            int bestRank = NO_RANK;
+            int bestLeft = 0;
+            int bestRight = 0;
+            for (int i = 0; i < length - 1; i++) {
+                int rank = mergeRanks.get(pairKey(symbols[i], symbols[i + 1]), NO_RANK);
+                if (rank < bestRank) {
+                    bestRank = rank;
+                    bestLeft = symbols[i];
+                    bestRight = symbols[i + 1];
                 }
             }
+            if (bestRank == NO_RANK) {
+                break;
+            }
 
-            if (bestPair == null) break;
-
-            List<String> newWord = new ArrayList<>();
-            for (int i = 0; i < word.size(); i++) {
-                if (i < word.size() - 1 && (word.get(i) + word.get(i + 1)).equals(bestPair)) {
-                    newWord.add(bestPair);
-                    i++;
+            int merged = FIRST_MERGED_ID + bestRank;
+            int write = 0;
+            for (int read = 0; read < length; read++) {
+                if (read < length - 1 && symbols[read] == bestLeft && symbols[read + 1] == bestRight) {
+                    symbols[write++] = merged;
+                    read++;
                 } else {
-                    newWord.add(word.get(i));
+                    symbols[write++] = symbols[read];
                 }
             }
-            word = newWord;
+            length = write;
         }
-
-        return String.join(" ", word);
+        return Arrays.copyOf(symbols, length);
     }
 
     public List<Integer> encode(String text) {
         List<Integer> bpeTokens = new ArrayList<>();
-        text = text.replaceAll("\\s+", " ").trim().toLowerCase();
-        Matcher matcher = pattern.matcher(text);
-
-        StringBuilder currentToken = new StringBuilder();
-        while (matcher.find()) {
-            if (!currentToken.isEmpty()) {
-                processToken(currentToken.toString(), bpeTokens);
-                currentToken = new StringBuilder();
+        forEachToken(text, ids -> {
+            for (int id : ids) {
+                bpeTokens.add(id);
             }
-            String group = matcher.group();
-            if (!group.matches("[{}\\[\\]\n]")) {
-                currentToken.append(group);
-            }
-        }
+        });
+        return bpeTokens;
+    }
 
-        if (!currentToken.isEmpty()) {
-            processToken(currentToken.toString(), bpeTokens);
-        }
+    // 適合反覆計算同一段逐步編輯中的文字，例如提示詞輸入框
+    public IncrementalTokenCounter incrementalCounter() {
+        return new IncrementalTokenCounter(this);
+    }
 
-        return bpeTokens;
+    // 只需要數量時不建立 List<Integer>
+    public int countTokens(String text) {
+        int[] count = new int[1];
+        forEachToken(text, ids -> count[0] += ids.length);
+        return count[0];
     }
 
-    private void processToken(String token, List<Integer> bpeTokens) {
-        String encodedToken = token.chars()
-                .mapToObj(byteEncoder::get)
-                .collect(Collectors.joining());
-        for (String bpeToken : bpe(encodedToken).split(" ")) {
-            bpeTokens.add(encoder.getOrDefault(bpeToken, encoder.get(END_OF_TEXT)));
+    private void forEachToken(String text, Consumer<int[]> consumer) {
+        Matcher matcher = pattern.matcher(text.toLowerCase());
+        while (matcher.find()) {
+            String group = matcher.group();
+            if (group.equals(START_OF_TEXT)) {
+                consumer.accept(new int[]{startOfTextId});
+            } else if (group.equals(END_OF_TEXT)) {
+                consumer.accept(new int[]{endOfTextId});
+            } else {
+                consumer.accept(bpe(group));
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.zxzinn.novelai.utils.tokenizer;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Optional;
+
+// 預先編譯好的合併順位表：直接存放 LongIntHashMap 的陣列，啟動時以記憶體映射讀入，不需解壓與解析詞表。
+// 標頭記錄來源詞表的 SHA-256，詞表更新後舊快照不會被沿用
+@Log4j2
+final class TokenizerSnapshot {
+    private static final int MAGIC = 0x4E414942;
+    // 詞表或 ID 規則變動時遞增，舊快照會被忽略並重新產生
+    private static final int FORMAT_VERSION = 2;
+    private static final int DIGEST_BYTES = 32;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES + DIGEST_BYTES;
+
+    private TokenizerSnapshot() {
+    }
+
+    static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    static Optional<Vocabulary> read(Path file, byte[] sourceDigest) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.info("分詞器快照格式不符，將重新產生: {}", file);
+                return Optional.empty();
+            }
+            int mergeCount = buffer.getInt();
+            int size = buffer.getInt();
+            int capacity = buffer.getInt();
+            byte[] storedDigest = new byte[DIGEST_BYTES];
+            buffer.get(storedDigest);
+            if (!Arrays.equals(storedDigest, sourceDigest)) {
+                log.info("分詞器快照與目前的詞表不符，將重新產生: {}", file);
+                return Optional.empty();
+            }
+            long expectedBytes = HEADER_BYTES + (long) capacity * (Long.BYTES + Integer.BYTES);
+            if (capacity <= 0 || Integer.bitCount(capacity) != 1 || size < 0 || size > capacity / 2
+                    || channel.size() != expectedBytes) {
+                log.info("分詞器快照大小不符，將重新產生: {}", file);
+                return Optional.empty();
+            }
+            long[] keys = new long[capacity];
+            int[] values = new int[capacity];
+            buffer.asLongBuffer().get(keys);
+            buffer.position(buffer.position() + capacity * Long.BYTES);
+            buffer.asIntBuffer().get(values);
+            return Optional.of(new Vocabulary(new LongIntHashMap(keys, values, size), mergeCount));
+        } catch (IOException | RuntimeException e) {
+            log.warn("無法讀取分詞器快照，改為從詞表載入: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // 先寫入暫存檔再搬移，避免中途結束留下不完整的快照
+    static void write(Path file, Vocabulary vocabulary, byte[] sourceDigest) throws IOException {
+        if (sourceDigest.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("詞表雜湊長度必須為 " + DIGEST_BYTES);
+        }
+        long[] keys = vocabulary.mergeRanks().keys();
+        int[] values = vocabulary.mergeRanks().values();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keys.length * (Long.BYTES + Integer.BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(vocabulary.mergeCount())
+                .putInt(vocabulary.mergeRanks().size())
+                .putInt(keys.length)
+                .put(sourceDigest);
+        buffer.asLongBuffer().put(keys);
+        buffer.position(buffer.position() + keys.length * Long.BYTES);
+        buffer.asIntBuffer().put(values);
+        buffer.rewind();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "bpe_vocab", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    record Vocabulary(LongIntHashMap mergeRanks, int mergeCount) {
+    }
+}
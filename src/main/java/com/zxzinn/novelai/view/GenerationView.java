@@ -1,25 +1,26 @@
 package com.zxzinn.novelai.view;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.zxzinn.novelai.component.*;
+import com.zxzinn.novelai.model.GeneratedImage;
 import com.zxzinn.novelai.model.GenerationResult;
 import com.zxzinn.novelai.model.GenerationTask;
 import com.zxzinn.novelai.model.UIComponentsData;
 import com.zxzinn.novelai.service.ui.NotificationService;
 import com.zxzinn.novelai.utils.embed.EmbedFileManager;
-import com.zxzinn.novelai.utils.image.ImageUtils;
 import com.zxzinn.novelai.viewmodel.GenerationViewModel;
+import com.zxzinn.novelai.viewmodel.PromptComponentViewModel;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.layout.*;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
 
 @Log4j2
 public class GenerationView {
@@ -28,11 +29,13 @@ public class GenerationView {
     private static final String GENERATE_BUTTON_STOP_CLASS = "generate-button-stop";
 
     private final GenerationViewModel viewModel;
+    private final Provider<PromptComponentViewModel> promptViewModelProvider;
     private final UIComponents uiComponents;
 
     @Inject
-    public GenerationView(GenerationViewModel viewModel) {
+    public GenerationView(GenerationViewModel viewModel, Provider<PromptComponentViewModel> promptViewModelProvider) {
         this.viewModel = viewModel;
+        this.promptViewModelProvider = promptViewModelProvider;
         this.uiComponents = new UIComponents();
         initializeUIComponents();
     }
@@ -116,7 +119,7 @@ public class GenerationView {
         HBox promptBox = new HBox(10);
         HBox.setHgrow(promptBox, Priority.ALWAYS);
 
-        PromptComponent promptComponent = new PromptComponent();
+        PromptComponent promptComponent = new PromptComponent(promptViewModelProvider.get());
         HBox.setHgrow(promptComponent, Priority.ALWAYS);
 
         promptBox.getChildren().add(promptComponent);
@@ -151,8 +154,7 @@ public class GenerationView {
     }
 
     private void initialize() {
-        EmbedFileManager embedFileManager = new EmbedFileManager();
-        embedFileManager.scanEmbedFiles();
+        EmbedFileManager embedFileManager = EmbedFileManager.getInstance();
 
         uiComponents.positivePromptComponent.setEmbedFileManager(embedFileManager);
         uiComponents.negativePromptComponent.setEmbedFileManager(embedFileManager);
@@ -164,6 +166,7 @@ public class GenerationView {
         initializeFields();
         loadSettings();
         setupListeners();
+        viewModel.setConfiguredSeedSupplier(uiComponents.samplingSettingsPane::getSeed);
         viewModel.setupPromptControls(uiComponents.positivePromptComponent, uiComponents.negativePromptComponent);
         updatePromptPreviews();
         setupGenerationModeComboBox();
@@ -176,7 +179,7 @@ public class GenerationView {
     }
 
     private void initializeGenerateCountComboBox() {
-        uiComponents.generateCountComboBox.getItems().addAll("1", "2", "3", "4", "無限");
+        uiComponents.generateCountComboBox.getItems().addAll("1", "2", "3", "4", "無限", GenerationViewModel.MATRIX_MODE);
         uiComponents.generateCountComboBox.setValue("1");
     }
 
@@ -234,15 +237,62 @@ public class GenerationView {
             return;
         }
 
+        if (viewModel.isMatrixMode()) {
+            startMatrixGeneration();
+            return;
+        }
+
         viewModel.startGeneration();
         updateButtonState(true);
 
         generateNextImage();
     }
 
+    private void startMatrixGeneration() {
+        String positivePrompt = uiComponents.positivePromptComponent.getPromptText();
+        List<String> candidates = viewModel.getMatrixAxisCandidates(positivePrompt);
+        if (candidates.isEmpty()) {
+            NotificationService.showNotification("正面提示詞中沒有可列舉的嵌入標籤");
+            return;
+        }
+        Optional<Set<String>> axisNames = new MatrixAxisDialog(candidates,
+                names -> viewModel.getMatrixSize(positivePrompt, names)).showAndWait();
+        if (axisNames.isEmpty()) {
+            return;
+        }
+
+        long combinations;
+        try {
+            combinations = viewModel.startMatrixGeneration(collectUIData(), positivePrompt,
+                    uiComponents.negativePromptComponent.getPromptText(), axisNames.get(),
+                    generatedImage -> Platform.runLater(() -> handleGeneratedImage(generatedImage)),
+                    this::handleMatrixResult,
+                    () -> Platform.runLater(this::finishGeneration));
+        } catch (IllegalArgumentException e) {
+            NotificationService.showNotification(e.getMessage());
+            return;
+        }
+        if (combinations == 0) {
+            NotificationService.showNotification("正面提示詞中沒有可列舉的嵌入標籤");
+            return;
+        }
+        updateButtonState(true);
+        NotificationService.showNotification(String.format("提示詞矩陣共 %d 組，開始依序生成", combinations));
+    }
+
+    private void handleMatrixResult(GenerationResult result) {
+        Platform.runLater(() -> {
+            if (result.isSuccess()) {
+                NotificationService.showNotification(String.format("圖像生成成功！(%d 張)", result.getGeneratedImages().size()));
+            } else if (!viewModel.isStopping()) {
+                NotificationService.showNotification("圖像生成失敗: " + result.getErrorMessage());
+                stopGeneration();
+            }
+        });
+    }
+
     private boolean isImageUploaded() {
-        return uiComponents.image2ImageSettingsPane.getBase64Image() != null &&
-                !uiComponents.image2ImageSettingsPane.getBase64Image().isEmpty();
+        return uiComponents.image2ImageSettingsPane.getImageFile() != null;
     }
 
     private UIComponentsData collectUIData() {
@@ -256,7 +306,7 @@ public class GenerationView {
         data.smeaDyn = uiComponents.text2ImageSettingsPane.isSmeaDyn();
         data.strength = uiComponents.image2ImageSettingsPane.getStrength();
         data.noise = uiComponents.image2ImageSettingsPane.getNoise();
-        data.base64Image = uiComponents.image2ImageSettingsPane.getBase64Image();
+        data.imageFile = uiComponents.image2ImageSettingsPane.getImageFile();
         data.extraNoiseSeed = uiComponents.image2ImageSettingsPane.getExtraNoiseSeed();
         data.outputWidth = uiComponents.outputSettingsPane.getOutputWidth();
         data.outputHeight = uiComponents.outputSettingsPane.getOutputHeight();
@@ -265,43 +315,50 @@ public class GenerationView {
         data.steps = uiComponents.samplingSettingsPane.getSteps();
         data.count = uiComponents.outputSettingsPane.getCount();
         data.seed = uiComponents.samplingSettingsPane.getSeed();
+        data.expansionSeed = viewModel.getExpansionSeed();
+        data.outputDirectory = uiComponents.outputSettingsPane.getOutputDirectory();
         return data;
     }
 
     private void generateNextImage() {
-        if (viewModel.shouldStopGeneration()) {
-            finishGeneration();
-            return;
+        while (viewModel.canSubmitMoreGenerations()) {
+            if (!submitGenerationTask()) {
+                break;
+            }
         }
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                UIComponentsData uiData = collectUIData();
-                GenerationTask task = viewModel.createGenerationTask(uiData);
+        if (viewModel.shouldStopGeneration() && !viewModel.hasInFlightGenerations()) {
+            finishGeneration();
+        }
+    }
 
-                viewModel.submitTask(task)
-                        .thenAccept(this::handleGenerationResult);
-            } catch (Exception e) {
-                log.error("Error creating generation task: ", e);
-                finishGeneration();
-            }
-        });
+    private boolean submitGenerationTask() {
+        try {
+            UIComponentsData uiData = collectUIData();
+            GenerationTask task = viewModel.createGenerationTask(uiData);
+
+            viewModel.submitTask(task, generatedImage -> Platform.runLater(() -> handleGeneratedImage(generatedImage)))
+                    .thenAccept(this::handleGenerationResult);
+            updatePromptPreviews();
+            return true;
+        } catch (Exception e) {
+            log.error("Error creating generation task: ", e);
+            stopGeneration();
+            return false;
+        }
     }
 
     private void handleGenerationResult(GenerationResult result) {
-        if (result.isSuccess()) {
-            Platform.runLater(() -> {
-                handleGeneratedImage(result.getImageData());
-                updatePromptPreviews();
-                viewModel.decrementRemainingGenerations();
-                generateNextImage();
-            });
-        } else {
-            Platform.runLater(() -> {
+        Platform.runLater(() -> {
+            viewModel.completeGeneration(result.isSuccess());
+            if (result.isSuccess()) {
+                NotificationService.showNotification(String.format("圖像生成成功！(%d 張)", result.getGeneratedImages().size()));
+            } else if (!viewModel.isStopping()) {
                 NotificationService.showNotification("圖像生成失敗: " + result.getErrorMessage());
-                finishGeneration();
-            });
-        }
+                stopGeneration();
+            }
+            generateNextImage();
+        });
     }
 
     private void stopGeneration() {
@@ -326,17 +383,9 @@ public class GenerationView {
         });
     }
 
-    private void handleGeneratedImage(byte[] imageData) {
-        Image image = new Image(new ByteArrayInputStream(imageData));
-        saveImageToFile(imageData).ifPresent(imageFile -> {
-            uiComponents.imagePreviewPane.updatePreview(imageFile);
-            uiComponents.historyImagesPane.addImage(image, imageFile);
-            NotificationService.showNotification("圖像生成成功！");
-        });
-    }
-
-    private Optional<File> saveImageToFile(byte[] imageData) {
-        return ImageUtils.saveImage(imageData, uiComponents.outputSettingsPane.getOutputDirectory());
+    private void handleGeneratedImage(GeneratedImage generatedImage) {
+        uiComponents.imagePreviewPane.updatePreview(generatedImage.file(), generatedImage.image());
+        uiComponents.historyImagesPane.addImage(generatedImage.image(), generatedImage.file());
     }
 
     private void finishGeneration() {
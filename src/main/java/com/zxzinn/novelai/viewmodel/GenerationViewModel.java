@@ -2,23 +2,38 @@ package com.zxzinn.novelai.viewmodel;
 
 import com.zxzinn.novelai.api.GenerationPayload;
 import com.zxzinn.novelai.component.*;
+import com.zxzinn.novelai.model.ExpandedPrompt;
+import com.zxzinn.novelai.model.GeneratedImage;
 import com.zxzinn.novelai.model.GenerationResult;
 import com.zxzinn.novelai.model.GenerationTask;
 import com.zxzinn.novelai.model.UIComponentsData;
 import com.zxzinn.novelai.service.generation.GenerationTaskManager;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
 import com.zxzinn.novelai.utils.embed.EmbedProcessor;
+import com.zxzinn.novelai.utils.embed.PromptMatrix;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.control.ComboBox;
 import lombok.Getter;
+import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
 public class GenerationViewModel {
+    // NovelAI 的種子為 32 位元無號整數
+    private static final long MAX_SEED = 4294967295L;
+    public static final String MATRIX_MODE = "矩陣";
 
     private final PropertiesManager propertiesManager;
     private final EmbedProcessor embedProcessor;
@@ -29,10 +44,16 @@ public class GenerationViewModel {
     private final AtomicBoolean stopRequested = new AtomicBoolean(false);
     private final AtomicBoolean isInfiniteMode = new AtomicBoolean(false);
     private AtomicInteger remainingGenerations;
+    private final AtomicInteger inFlightGenerations = new AtomicInteger(0);
 
     private final AtomicBoolean isPositivePromptLocked = new AtomicBoolean(false);
     private final AtomicBoolean isNegativePromptLocked = new AtomicBoolean(false);
 
+    // 目前預覽中提示詞所用的生成種子，送出任務時一併寫入 payload，讓圖像能依中繼資料重現
+    private final AtomicLong expansionSeed = new AtomicLong(nextRandomSeed());
+    @Setter private LongSupplier configuredSeedSupplier = () -> 0L;
+    private CompletableFuture<Void> matrixRun;
+
     public GenerationViewModel() {
         this.propertiesManager = PropertiesManager.getInstance();
         this.embedProcessor = new EmbedProcessor();
@@ -59,12 +80,17 @@ public class GenerationViewModel {
     }
 
     public void setupPromptControls(PromptComponent positivePromptComponent, PromptComponent negativePromptComponent) {
-        setupPromptControl(positivePromptComponent, isPositivePromptLocked, true);
-        setupPromptControl(negativePromptComponent, isNegativePromptLocked, false);
+        setupPromptControl(positivePromptComponent, negativePromptComponent, isPositivePromptLocked, true);
+        setupPromptControl(negativePromptComponent, positivePromptComponent, isNegativePromptLocked, false);
     }
 
-    private void setupPromptControl(PromptComponent promptComponent, AtomicBoolean isLocked, boolean isPositive) {
-        promptComponent.setOnRefreshAction(() -> forceRefreshPromptPreview(promptComponent));
+    private void setupPromptControl(PromptComponent promptComponent, PromptComponent otherPromptComponent,
+                                    AtomicBoolean isLocked, boolean isPositive) {
+        promptComponent.setOnRefreshAction(() -> {
+            resolveExpansionSeed();
+            forceRefreshPromptPreview(promptComponent, isPositive);
+            refreshPromptPreview(otherPromptComponent, !isPositive);
+        });
         promptComponent.setOnLockAction(() -> {
             isLocked.set(!isLocked.get());
             promptComponent.setLockState(isLocked.get());
@@ -73,28 +99,31 @@ public class GenerationViewModel {
 
     public void refreshPromptPreview(PromptComponent promptComponent, boolean isPositive) {
         if (isPromptLocked(isPositive)) {
-            String processedPrompt = embedProcessor.processPrompt(promptComponent.getPromptText());
-            promptComponent.setPreviewText(processedPrompt);
+            forceRefreshPromptPreview(promptComponent, isPositive);
         }
     }
 
-    public void forceRefreshPromptPreview(@NotNull PromptComponent promptComponent) {
-        String processedPrompt = embedProcessor.processPrompt(promptComponent.getPromptText());
-        promptComponent.setPreviewText(processedPrompt);
+    public void forceRefreshPromptPreview(@NotNull PromptComponent promptComponent, boolean isPositive) {
+        promptComponent.setPreviewText(expandPrompt(promptComponent.getPromptText(), isPositive).text());
     }
 
     public void updatePromptPreview(String newValue, PromptComponent promptComponent, boolean isPositive) {
         if (isPromptLocked(isPositive)) {
-            String processedPrompt = embedProcessor.processPrompt(newValue);
-            promptComponent.setPreviewText(processedPrompt);
+            promptComponent.setPreviewText(expandPrompt(newValue, isPositive).text());
         }
     }
 
+    public ExpandedPrompt expandPrompt(String prompt, boolean isPositive) {
+        return embedProcessor.expand(prompt, EmbedProcessor.deriveExpansionSeed(expansionSeed.get(), isPositive));
+    }
+
     public boolean isPromptLocked(boolean isPositive) {
         return isPositive ? !isPositivePromptLocked.get() : !isNegativePromptLocked.get();
     }
 
+    // 每次重新整理預覽都重新決定展開種子；使用者未指定種子時隨機產生，有提示詞鎖定時沿用目前的種子
     public void updatePromptPreviews(PromptComponent positivePromptComponent, PromptComponent negativePromptComponent) {
+        resolveExpansionSeed();
         if (!isPositivePromptLocked.get()) {
             refreshPromptPreview(positivePromptComponent, true);
         }
@@ -103,6 +132,39 @@ public class GenerationViewModel {
         }
     }
 
+    // 鎖定的預覽是由目前的展開種子展開的，換新種子後就無法重現該預覽，因此鎖定期間不重新決定
+    private long resolveExpansionSeed() {
+        if (isAnyPromptLocked()) {
+            return expansionSeed.get();
+        }
+        long seed = configuredSeed();
+        if (seed == 0) {
+            seed = nextRandomSeed();
+        }
+        expansionSeed.set(seed);
+        return seed;
+    }
+
+    private boolean isAnyPromptLocked() {
+        return isPositivePromptLocked.get() || isNegativePromptLocked.get();
+    }
+
+    private long configuredSeed() {
+        try {
+            return configuredSeedSupplier.getAsLong();
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public long getExpansionSeed() {
+        return expansionSeed.get();
+    }
+
+    private static long nextRandomSeed() {
+        return ThreadLocalRandom.current().nextLong(1, MAX_SEED + 1);
+    }
+
     public void startGeneration() {
         generatingProperty.set(true);
         stopRequested.set(false);
@@ -111,15 +173,92 @@ public class GenerationViewModel {
         int maxCount = getMaxCount();
         isInfiniteMode.set(maxCount == Integer.MAX_VALUE);
         remainingGenerations = new AtomicInteger(isInfiniteMode.get() ? Integer.MAX_VALUE : maxCount);
+        inFlightGenerations.set(0);
+    }
+
+    public List<String> getMatrixAxisCandidates(String positivePrompt) {
+        return embedProcessor.embedNames(positivePrompt);
+    }
+
+    // 組合數超過 long 範圍時丟出 IllegalArgumentException
+    public long getMatrixSize(String positivePrompt, Set<String> axisNames) {
+        return embedProcessor.matrix(positivePrompt, axisNames, 0).size();
+    }
+
+    // 列舉正面提示詞中選定嵌入標籤的組合並逐一送出，任務在送出前才展開；回傳組合數，為 0 時不會開始生成。
+    // 所有組合共用同一個圖像種子，只有提示詞不同；各組的展開種子記錄在任務中
+    public long startMatrixGeneration(UIComponentsData uiData, String positivePrompt, String negativePrompt,
+                                      Set<String> axisNames, Consumer<GeneratedImage> onImageReady,
+                                      Consumer<GenerationResult> onResult, Runnable onFinished) {
+        long baseSeed = resolveExpansionSeed();
+        long configuredSeed = configuredSeed();
+        long imageSeed = configuredSeed != 0 ? configuredSeed : baseSeed;
+        PromptMatrix matrix = embedProcessor.matrix(positivePrompt, axisNames, baseSeed);
+        if (matrix.size() == 0) {
+            return 0;
+        }
+        generatingProperty.set(true);
+        stopRequested.set(false);
+        stoppingProperty.set(false);
+
+        Iterator<GenerationTask> tasks = new Iterator<>() {
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return !stopRequested.get() && index < matrix.size();
+            }
+
+            @Override
+            public GenerationTask next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long position = index++;
+                long expansionSeed = matrix.expansionSeed(position);
+                String negative = embedProcessor.expand(negativePrompt,
+                        EmbedProcessor.deriveExpansionSeed(expansionSeed, false)).text();
+                GenerationPayload payload = createGenerationPayload(uiData, matrix.get(position).text(), negative, imageSeed);
+                return new GenerationTask(payload, uiData.apiKey, uiData.outputDirectory, GenerationTask.Priority.LOW,
+                        expansionSeed);
+            }
+        };
+        matrixRun = taskManager.submitAll(tasks, taskManager.getSlotsPerApiKey(), onImageReady, onResult);
+        matrixRun.whenComplete((result, ex) -> onFinished.run());
+        return matrix.size();
+    }
+
+    public boolean isMatrixMode() {
+        return MATRIX_MODE.equals(propertiesManager.getString("generateCount", "1"));
     }
 
     public boolean shouldStopGeneration() {
         return stopRequested.get() || (!isInfiniteMode.get() && remainingGenerations.get() <= 0);
     }
 
+    public boolean canSubmitMoreGenerations() {
+        if (shouldStopGeneration()) {
+            return false;
+        }
+        int inFlight = inFlightGenerations.get();
+        if (inFlight >= taskManager.getSlotsPerApiKey()) {
+            return false;
+        }
+        return isInfiniteMode.get() || remainingGenerations.get() - inFlight > 0;
+    }
+
+    public boolean hasInFlightGenerations() {
+        return inFlightGenerations.get() > 0;
+    }
+
     public void stopGeneration() {
         stopRequested.set(true);
         stoppingProperty.set(true);
+        if (matrixRun != null) {
+            matrixRun.cancel(false);
+            matrixRun = null;
+        }
+        taskManager.cancelAllTasks();
     }
 
     public void finishGeneration() {
@@ -129,15 +268,25 @@ public class GenerationViewModel {
 
     public GenerationTask createGenerationTask(UIComponentsData uiData) {
         GenerationPayload payload = createGenerationPayload(uiData);
-        return new GenerationTask(payload, uiData.apiKey);
+        GenerationTask.Priority priority = isInfiniteMode.get() ? GenerationTask.Priority.LOW : GenerationTask.Priority.NORMAL;
+        return new GenerationTask(payload, uiData.apiKey, uiData.outputDirectory, priority, uiData.expansionSeed);
     }
 
+    // 未鎖定時圖像種子與展開種子相同，payload 中的種子即可重現提示詞；鎖定時展開種子固定，
+    // 圖像種子仍每次重新抽取（使用者在取樣設定指定種子時除外），展開種子另記錄在任務中
     private GenerationPayload createGenerationPayload(UIComponentsData uiData) {
+        long seed = uiData.seed != 0 ? uiData.seed
+                : isAnyPromptLocked() || uiData.expansionSeed == 0 ? nextRandomSeed() : uiData.expansionSeed;
+        return createGenerationPayload(uiData, uiData.positivePromptPreviewText, uiData.negativePromptPreviewText, seed);
+    }
+
+    private GenerationPayload createGenerationPayload(UIComponentsData uiData, String positivePrompt,
+                                                      String negativePrompt, Long seed) {
         GenerationPayload payload = new GenerationPayload();
         GenerationPayload.GenerationParameters params = new GenerationPayload.GenerationParameters();
         payload.setParameters(params);
 
-        payload.setInput(uiData.positivePromptPreviewText);
+        payload.setInput(positivePrompt);
         payload.setModel(uiData.model);
 
         if ("Text2Image".equals(uiData.generationMode)) {
@@ -148,7 +297,7 @@ public class GenerationViewModel {
             payload.setAction("img2img");
             params.setStrength(uiData.strength);
             params.setNoise(uiData.noise);
-            params.setImage(uiData.base64Image);
+            params.setImageFile(uiData.imageFile);
             params.setExtra_noise_seed(uiData.extraNoiseSeed);
         }
 
@@ -159,14 +308,22 @@ public class GenerationViewModel {
         params.setSampler(uiData.sampler);
         params.setSteps(uiData.steps);
         params.setN_samples(uiData.count);
-        params.setSeed(uiData.seed == 0 ? null : uiData.seed);
+        params.setSeed(seed);
 
-        params.setNegative_prompt(uiData.negativePromptPreviewText);
+        params.setNegative_prompt(negativePrompt);
         return payload;
     }
 
-    public CompletableFuture<GenerationResult> submitTask(GenerationTask task) {
-        return taskManager.submitTask(task);
+    public CompletableFuture<GenerationResult> submitTask(GenerationTask task, Consumer<GeneratedImage> onImageReady) {
+        inFlightGenerations.incrementAndGet();
+        return taskManager.submitTask(task, onImageReady);
+    }
+
+    public void completeGeneration(boolean success) {
+        inFlightGenerations.decrementAndGet();
+        if (success) {
+            decrementRemainingGenerations();
+        }
     }
 
     public void decrementRemainingGenerations() {
@@ -177,6 +334,9 @@ public class GenerationViewModel {
 
     private int getMaxCount() {
         String selectedCount = propertiesManager.getString("generateCount", "1");
+        if (MATRIX_MODE.equals(selectedCount)) {
+            return 1;
+        }
         return "無限".equals(selectedCount) ? Integer.MAX_VALUE : Integer.parseInt(selectedCount);
     }
 
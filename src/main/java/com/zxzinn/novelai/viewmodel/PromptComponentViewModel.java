@@ -1,9 +1,15 @@
 package com.zxzinn.novelai.viewmodel;
 
+import com.google.inject.Inject;
+import com.zxzinn.novelai.model.PromptFootprint;
 import com.zxzinn.novelai.service.generation.AutoCompleteHandler;
-import com.zxzinn.novelai.utils.common.ResourcePaths;
+import com.zxzinn.novelai.utils.common.ExecutorProvider;
 import com.zxzinn.novelai.utils.embed.EmbedFileManager;
+import com.zxzinn.novelai.utils.embed.EmbedProcessor;
+import com.zxzinn.novelai.utils.embed.EmbedStatistics;
+import com.zxzinn.novelai.utils.tokenizer.IncrementalTokenCounter;
 import com.zxzinn.novelai.utils.tokenizer.SimpleTokenizer;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.scene.control.TextArea;
@@ -11,11 +17,10 @@ import javafx.scene.input.KeyEvent;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PromptComponentViewModel {
 
@@ -29,15 +34,43 @@ public class PromptComponentViewModel {
     private final StringProperty tokenCountText = new SimpleStringProperty("0 / " + TOKEN_LIMIT);
     private final ObjectProperty<TokenLevel> tokenLevel = new SimpleObjectProperty<>(TokenLevel.LOW);
     private final BooleanProperty locked = new SimpleBooleanProperty(false);
+    private final StringProperty footprintText = new SimpleStringProperty("");
+    private final BooleanProperty footprintOverflow = new SimpleBooleanProperty(false);
 
     @Getter @Setter private Runnable refreshAction;
     @Getter @Setter private Runnable lockAction;
 
     private AutoCompleteHandler autoCompleteHandler;
-    private SimpleTokenizer tokenizer;
-
-    public PromptComponentViewModel() {
-        initializeTokenizer();
+    private final SimpleTokenizer tokenizer;
+    private final IncrementalTokenCounter tokenCounter;
+    private final EmbedProcessor embedProcessor;
+    private final EmbedStatistics embedStatistics;
+    // 背景計算：pendingText 與 pendingPrompt 只保留最新一筆，計算期間的多次修改合併成一次；
+    // token 數由 tokenBarTimer 在下一個畫面脈衝套用，展開估算以 Platform.runLater 套用
+    private final Executor backgroundExecutor;
+    private final AtomicReference<String> pendingText = new AtomicReference<>();
+    private final AtomicReference<String> pendingPrompt = new AtomicReference<>();
+    private final AtomicInteger workRequests = new AtomicInteger();
+    private final AtomicInteger latestTokenCount = new AtomicInteger();
+    private final AtomicBoolean tokenBarUpdateScheduled = new AtomicBoolean(false);
+    private final AnimationTimer tokenBarTimer;
+
+    @Inject
+    public PromptComponentViewModel(SimpleTokenizer tokenizer, EmbedProcessor embedProcessor,
+                                    EmbedStatistics embedStatistics, ExecutorProvider executorProvider) {
+        this.tokenizer = tokenizer;
+        this.tokenCounter = tokenizer.incrementalCounter();
+        this.backgroundExecutor = executorProvider.getCpuExecutor();
+        this.tokenBarTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                tokenBarUpdateScheduled.set(false);
+                applyTokenCount(latestTokenCount.get());
+            }
+        };
+        this.embedProcessor = embedProcessor;
+        this.embedStatistics = embedStatistics;
         setupListeners();
     }
 
@@ -45,26 +78,9 @@ public class PromptComponentViewModel {
         this.autoCompleteHandler = new AutoCompleteHandler(promptTextArea);
     }
 
-    private void initializeTokenizer() {
-        try {
-            InputStream inputStream = getClass().getResourceAsStream(ResourcePaths.SIMPLE_TOKENIZER);
-            if (inputStream == null) {
-                throw new IOException("Cannot find resource");
-            }
-
-            Path tempFile = Files.createTempFile("bpe_vocab", ".txt.gz");
-            Files.copy(inputStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
-
-            tokenizer = new SimpleTokenizer(tempFile.toString());
-
-            tempFile.toFile().deleteOnExit();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to initialize tokenizer", e);
-        }
-    }
-
     private void setupListeners() {
         previewText.addListener((observable, oldValue, newValue) -> updateTokenCount());
+        promptText.addListener((observable, oldValue, newValue) -> updateFootprint(newValue));
     }
 
     public void setEmbedFileManager(EmbedFileManager embedFileManager) {
@@ -107,14 +123,74 @@ public class PromptComponentViewModel {
 
     private void updateTokenCount() {
         String text = previewText.get();
-        int tokenCount = tokenizer.encode(text).size();
+        pendingText.set(text == null ? "" : text);
+        scheduleWork();
+    }
+
+    private void updateFootprint(String prompt) {
+        pendingPrompt.set(prompt == null ? "" : prompt);
+        scheduleWork();
+    }
+
+    // 沒有工作在跑時才排一個新的，工作會一直處理到沒有新的請求為止，同時間只有一個執行緒使用 tokenCounter
+    private void scheduleWork() {
+        if (workRequests.getAndIncrement() == 0) {
+            backgroundExecutor.execute(this::drainPendingWork);
+        }
+    }
+
+    private void drainPendingWork() {
+        int requests = workRequests.get();
+        do {
+            try {
+                String text = pendingText.getAndSet(null);
+                if (text != null) {
+                    publishTokenCount(tokenCounter.count(text));
+                }
+                String prompt = pendingPrompt.getAndSet(null);
+                if (prompt != null) {
+                    PromptFootprint footprint = computeFootprint(prompt);
+                    Platform.runLater(() -> applyFootprint(footprint));
+                }
+            } catch (RuntimeException e) {
+                // 重設請求數，下一次修改才能重新排程
+                workRequests.set(0);
+                throw e;
+            }
+            requests = workRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void publishTokenCount(int tokenCount) {
+        latestTokenCount.set(tokenCount);
+        if (!tokenBarUpdateScheduled.getAndSet(true)) {
+            Platform.runLater(tokenBarTimer::start);
+        }
+    }
+
+    private void applyTokenCount(int tokenCount) {
         double ratio = (double) tokenCount / TOKEN_LIMIT;
+        tokenProgress.set(ratio);
+        tokenCountText.set(String.format("%d / %d", tokenCount, TOKEN_LIMIT));
+        updateTokenLevel(ratio);
+    }
 
-        Platform.runLater(() -> {
-            tokenProgress.set(ratio);
-            tokenCountText.set(String.format("%d / %d", tokenCount, TOKEN_LIMIT));
-            updateTokenLevel(ratio);
-        });
+    // 只依各嵌入檔案的統計估算，不展開提示詞，因此打字時就能提示可能超過上限
+    private PromptFootprint computeFootprint(String prompt) {
+        return prompt.indexOf('<') < 0 ? null : embedProcessor.analyze(prompt, embedStatistics);
+    }
+
+    private void applyFootprint(PromptFootprint footprint) {
+        if (footprint == null || footprint.embeds().isEmpty()) {
+            footprintText.set("");
+            footprintOverflow.set(false);
+            return;
+        }
+        boolean mayExceed = footprint.mayExceed(TOKEN_LIMIT);
+        String text = String.format("展開後約 %.0f 個 token (%d ~ %d)", footprint.tokens().expected(),
+                footprint.tokens().min(), footprint.tokens().max());
+        footprintText.set(mayExceed ? text + String.format("，可能超過 %d 的上限", TOKEN_LIMIT) : text);
+        footprintOverflow.set(mayExceed);
     }
 
     private void updateTokenLevel(double ratio) {
@@ -182,6 +258,14 @@ public class PromptComponentViewModel {
         return tokenLevel;
     }
 
+    public StringProperty footprintTextProperty() {
+        return footprintText;
+    }
+
+    public BooleanProperty footprintOverflowProperty() {
+        return footprintOverflow;
+    }
+
     public BooleanProperty lockedProperty() {
         return locked;
     }
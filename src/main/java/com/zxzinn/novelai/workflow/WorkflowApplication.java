@@ -4,10 +4,11 @@ import com.zxzinn.nodefx.NodeFXApplication;
 import com.zxzinn.novelai.api.APIClient;
 import com.zxzinn.novelai.api.Endpoint;
 import com.zxzinn.novelai.api.GenerationPayload;
+import com.zxzinn.novelai.model.GeneratedImage;
 import com.zxzinn.novelai.model.UIComponentsData;
 import com.zxzinn.novelai.utils.common.NAIConstants;
 import com.zxzinn.novelai.utils.common.PropertiesManager;
-import com.zxzinn.novelai.utils.image.ImageUtils;
+import com.zxzinn.novelai.utils.image.ImageZipExtractor;
 import javafx.application.Platform;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -15,12 +16,7 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.concurrent.CompletableFuture;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.List;
 
 @Log4j2
 public class WorkflowApplication extends NodeFXApplication {
@@ -318,38 +314,21 @@ public class WorkflowApplication extends NodeFXApplication {
 
         private void generateImage() {
             UIComponentsData uiData = collectUIData();
-            CompletableFuture.runAsync(() -> {
-                try {
-                    GenerationPayload payload = createGenerationPayload(uiData);
-                    byte[] zipData = apiClient.generateImage(payload, uiData.apiKey);
-                    byte[] imageData = extractImageFromZip(zipData);
-                    handleGeneratedImage(imageData);
-                } catch (Exception e) {
-                    log.error("生成圖像時發生錯誤", e);
-                    Platform.runLater(() -> showAlert("錯誤", "生成圖像時發生錯誤: " + e.getMessage()));
-                }
-            });
-        }
-
-        private byte[] extractImageFromZip(byte[] zipData) throws IOException {
-            try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zipData))) {
-                ZipEntry entry = zis.getNextEntry();
-                if (entry == null) {
-                    throw new IOException("ZIP file is empty");
-                }
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                byte[] buffer = new byte[4096];
-                int len;
-                while ((len = zis.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, len);
-                }
-                return outputStream.toByteArray();
-            }
-        }
-
-        private void handleGeneratedImage(byte[] imageData) {
+            GenerationPayload payload = createGenerationPayload(uiData);
+            apiClient.generateImageAsync(payload, uiData.apiKey,
+                            responseStream -> ImageZipExtractor.extractImages(responseStream, uiData.outputDirectory))
+                    .thenAccept(this::handleGeneratedImages)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        log.error("生成圖像時發生錯誤", cause);
+                        Platform.runLater(() -> showAlert("錯誤", "生成圖像時發生錯誤: " + cause.getMessage()));
+                        return null;
+                    });
+        }
+
+        private void handleGeneratedImages(List<GeneratedImage> generatedImages) {
             Platform.runLater(() -> {
-                Image image = new Image(new ByteArrayInputStream(imageData));
+                Image image = generatedImages.get(0).image();
                 previewImageView.setImage(image);
 
                 double imageWidth = image.getWidth();
@@ -371,18 +350,11 @@ public class WorkflowApplication extends NodeFXApplication {
                 imageScrollPane.setPrefSize(imageWidth + 20, imageHeight + 20);
                 setPrefSize(Math.max(200, imageWidth + 40), Math.max(200, imageHeight + 120));
 
-                saveImageToFile(imageData);
+                showAlert("成功", String.format("已保存 %d 張圖像到: %s", generatedImages.size(),
+                        generatedImages.get(0).file().getParentFile().getAbsolutePath()));
             });
         }
 
-        private void saveImageToFile(byte[] imageData) {
-            OutputSettingsNode outputSettingsNode = (OutputSettingsNode) findNodeByTitle("輸出設置");
-            String outputDirectory = outputSettingsNode.getOutputDirectory();
-            ImageUtils.saveImage(imageData, outputDirectory).ifPresent(file ->
-                    showAlert("成功", "圖像已保存到: " + file.getAbsolutePath())
-            );
-        }
-
         private UIComponentsData collectUIData() {
             UIComponentsData data = new UIComponentsData();
 
@@ -406,6 +378,7 @@ public class WorkflowApplication extends NodeFXApplication {
             data.outputHeight = outputSettingsNode.getOutputHeight();
             data.ratio = outputSettingsNode.getRatio();
             data.count = outputSettingsNode.getCount();
+            data.outputDirectory = outputSettingsNode.getOutputDirectory();
 
             Text2ImageSettingsNode text2ImageSettingsNode = (Text2ImageSettingsNode) findNodeByTitle("文生圖設置");
             data.smea = text2ImageSettingsNode.isSmea();